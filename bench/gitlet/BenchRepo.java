@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** The synthetic repository that a benchmark runs against, generated
+ *  once per trial in a new temporary directory and deleted afterwards.
+ *  Its shape is given by the JMH parameters below, which -p overrides.
+ *  Since gitlet's directories are fixed when Main is first used, each
+ *  trial must run in a JVM of its own, as it does unless forking is
+ *  turned off.  Commands' output is discarded while the trial runs.
+ *  @author Akshay Patel */
+@State(Scope.Benchmark)
+public class BenchRepo {
+
+    /** Number of files. */
+    @Param("1000")
+    public int files;
+
+    /** Number of commits on master before the branches. */
+    @Param("100")
+    public int commits;
+
+    /** Number of branches besides master. */
+    @Param("4")
+    public int branches;
+
+    /** Approximate size of each file in bytes. */
+    @Param("1024")
+    public int fileSize;
+
+    /** Fraction of the files that each commit rewrites. */
+    @Param("0.01")
+    public double churn;
+
+    /** The generator of the repository. */
+    private SyntheticRepo _repo;
+
+    /** Standard output while no trial runs. */
+    private PrintStream _stdout;
+
+    /** Generates the repository, pointing gitlet at it. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        System.setProperty("gitlet.cwd", dir.getPath());
+        _stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        _repo = new SyntheticRepo(dir, files, commits, branches, fileSize,
+                churn);
+        _repo.generate();
+    }
+
+    /** Deletes the repository. */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        System.setOut(_stdout);
+        _repo.delete();
+    }
+
+    /** Returns the generator of the repository. */
+    SyntheticRepo repo() {
+        return _repo;
+    }
+
+    /** Returns the SHA-1 of the head of branch NAME. */
+    String head(String name) {
+        return WorkingTree.headOf(name);
+    }
+}
@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of gitlet's commands, each run through Main.run against a
+ *  BenchRepo, as a user would run them but without JVM startup.  Read-
+ *  only commands run on the repository as generated; commands that
+ *  change it are given fresh work before each invocation, or alternate
+ *  between two states, so that every invocation does the same work.
+ *  @author Akshay Patel */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBench {
+
+    /** Files rewritten before each invocation, for add to stage. */
+    @State(Scope.Benchmark)
+    public static class Changed {
+
+        /** Paths of the files rewritten. */
+        private List<String> _paths;
+
+        /** Rewrites the next files of REPO. */
+        @Setup(Level.Invocation)
+        public void change(BenchRepo repo) throws IOException {
+            _paths = repo.repo().change(-1);
+        }
+    }
+
+    /** Files rewritten and staged before each invocation, for commit. */
+    @State(Scope.Benchmark)
+    public static class Staged {
+
+        /** Rewrites and stages the next files of REPO. */
+        @Setup(Level.Invocation)
+        public void stage(BenchRepo repo) throws IOException {
+            SyntheticRepo.add(repo.repo().change(-1));
+        }
+    }
+
+    /** A repository with a few files modified but not staged, so that
+     *  status has something to report. */
+    @State(Scope.Benchmark)
+    public static class Modified {
+
+        /** Rewrites some files of REPO. */
+        @Setup(Level.Trial)
+        public void change(BenchRepo repo) throws IOException {
+            repo.repo().change(-1);
+        }
+    }
+
+    /** Two states that a benchmark moves between, one per invocation. */
+    public abstract static class Toggle {
+
+        /** The two states. */
+        private String[] _states;
+
+        /** Number of invocations so far. */
+        private int _count;
+
+        /** Moves between FIRST, where the repository starts, and
+         *  SECOND. */
+        void setStates(String first, String second) {
+            _states = new String[] {first, second};
+        }
+
+        /** Returns the state that the next invocation moves to. */
+        String next() {
+            _count += 1;
+            return _states[_count % 2];
+        }
+    }
+
+    /** Checkouts alternate between master and branch-1. */
+    @State(Scope.Benchmark)
+    public static class Branches extends Toggle {
+
+        /** Names the branches of REPO. */
+        @Setup(Level.Trial)
+        public void name(BenchRepo repo) {
+            if (repo.repo().branches() < 1) {
+                throw new IllegalStateException("checkout needs a branch");
+            }
+            setStates(SyntheticRepo.MASTER, repo.repo().branch(1));
+        }
+    }
+
+    /** Resets alternate between master's head and its grandparent. */
+    @State(Scope.Benchmark)
+    public static class Heads extends Toggle {
+
+        /** Finds the heads in REPO. */
+        @Setup(Level.Trial)
+        public void find(BenchRepo repo) {
+            String head = repo.head(SyntheticRepo.MASTER);
+            Commit parent = Commit.fromFile(head).getParent();
+            Commit older = parent.getParent() == null ? parent
+                : parent.getParent();
+            setStates(head, older.getCodeName());
+        }
+    }
+
+    /** Master reset to its head before each merge of branch-1. */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+
+        /** Head of master before any merge. */
+        private String _head;
+
+        /** Records master's head in REPO. */
+        @Setup(Level.Trial)
+        public void record(BenchRepo repo) {
+            if (repo.repo().branches() < 1) {
+                throw new IllegalStateException("merge needs a branch");
+            }
+            _head = repo.head(SyntheticRepo.MASTER);
+        }
+
+        /** Undoes the last merge. */
+        @Setup(Level.Invocation)
+        public void reset() throws IOException {
+            Main.run("reset", _head);
+        }
+    }
+
+    /** Stages CHANGED, the files rewritten since the last invocation. */
+    @Benchmark
+    public void add(Changed changed) throws IOException {
+        List<String> paths = changed._paths;
+        String[] args = new String[paths.size() + 1];
+        args[0] = "add";
+        for (int i = 0; i < paths.size(); i += 1) {
+            args[i + 1] = paths.get(i);
+        }
+        Main.run(args);
+    }
+
+    /** Commits the files in STAGED. */
+    @Benchmark
+    public void commit(Staged staged) throws IOException {
+        Main.run("commit", "Benchmark commit");
+    }
+
+    /** Reports the status of the files in MODIFIED. */
+    @Benchmark
+    public void status(BenchRepo repo, Modified modified) throws IOException {
+        Main.run("status");
+    }
+
+    /** Prints the history of master in REPO. */
+    @Benchmark
+    public void log(BenchRepo repo) throws IOException {
+        Main.run("log");
+    }
+
+    /** Prints every commit in REPO. */
+    @Benchmark
+    public void globalLog(BenchRepo repo) throws IOException {
+        Main.run("global-log");
+    }
+
+    /** Finds a commit of REPO by its whole message. */
+    @Benchmark
+    public void find(BenchRepo repo) throws IOException {
+        Main.run("find", repo.repo().message(repo.commits / 2));
+    }
+
+    /** Finds the commits of REPO whose messages contain a word. */
+    @Benchmark
+    public void findAll(BenchRepo repo) throws IOException {
+        Main.run("find", "--all", "rewrites");
+    }
+
+    /** Prints the differences between master and branch-1 of REPO. */
+    @Benchmark
+    public void diff(BenchRepo repo) throws IOException {
+        Main.run("diff", SyntheticRepo.MASTER, repo.repo().branch(1));
+    }
+
+    /** Checks out the branch in BRANCHES that is not current. */
+    @Benchmark
+    public void checkout(BenchRepo repo, Branches branches)
+        throws IOException {
+        Main.run("checkout", branches.next());
+    }
+
+    /** Resets master to the commit in HEADS that is not its head. */
+    @Benchmark
+    public void reset(BenchRepo repo, Heads heads) throws IOException {
+        Main.run("reset", heads.next());
+    }
+
+    /** Merges branch-1 into master, as it was before UNMERGED. */
+    @Benchmark
+    public void merge(BenchRepo repo, Unmerged unmerged) throws IOException {
+        Main.run("merge", repo.repo().branch(1));
+    }
+}
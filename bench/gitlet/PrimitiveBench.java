@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the primitives that gitlet's commands are built from:
+ *  hashing, storing and reading blobs, and reading and decoding commits
+ *  and their trees, on the files and head commit of a BenchRepo.
+ *  @author Akshay Patel */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBench {
+
+    /** A file of the repository and its head commit. */
+    @State(Scope.Benchmark)
+    public static class Objects {
+
+        /** A file in the working directory. */
+        private File _file;
+
+        /** Its contents. */
+        private byte[] _contents;
+
+        /** SHA-1 of its blob. */
+        private String _blob;
+
+        /** SHA-1 of master's head. */
+        private String _head;
+
+        /** Stored form of master's head. */
+        private byte[] _commit;
+
+        /** SHA-1 of the tree of master's head. */
+        private String _tree;
+
+        /** Picks the objects from REPO. */
+        @Setup(Level.Trial)
+        public void pick(BenchRepo repo) {
+            _file = repo.repo().file(repo.repo().path(0));
+            _contents = Utils.readContents(_file);
+            _blob = Blob.store(_file).getBlobSHA1();
+            _head = repo.head(SyntheticRepo.MASTER);
+            _commit = Commit.COMMIT_STORE.get(_head, Commit.TYPE);
+            _tree = Commit.fromFile(_head).getTreeCode();
+        }
+    }
+
+    /** Returns the SHA-1 of the contents of a file. */
+    @Benchmark
+    public String sha1(Objects objects) {
+        return Utils.sha1(objects._contents);
+    }
+
+    /** Returns the contents of a file. */
+    @Benchmark
+    public byte[] readContents(Objects objects) {
+        return Utils.readContents(objects._file);
+    }
+
+    /** Returns the SHA-1 of the blob for a file, streaming it from
+     *  disk. */
+    @Benchmark
+    public Blob blobHash(Objects objects) {
+        return new Blob(objects._file);
+    }
+
+    /** Stores a file that is already in the Blob store. */
+    @Benchmark
+    public Blob blobStore(Objects objects) {
+        return Blob.store(objects._file);
+    }
+
+    /** Returns the contents of a blob, usually from the cache. */
+    @Benchmark
+    public byte[] blobRead(Objects objects) {
+        return Blob.fromFile(objects._blob).getContents();
+    }
+
+    /** Writes a blob to the working directory. */
+    @Benchmark
+    public void blobWrite(Objects objects) {
+        Blob.fromFile(objects._blob).writeTo(objects._file);
+    }
+
+    /** Returns master's head, usually from the cache. */
+    @Benchmark
+    public Commit commitRead(Objects objects) {
+        return Commit.fromFile(objects._head);
+    }
+
+    /** Decodes master's head from its stored form. */
+    @Benchmark
+    public Commit commitDecode(Objects objects) {
+        return Commit.decode(objects._head, objects._commit);
+    }
+
+    /** Returns every file tracked by master's head, reading its trees. */
+    @Benchmark
+    public Object treeFiles(Objects objects) {
+        return Tree.files(objects._tree);
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A generator of synthetic gitlet repositories for the benchmarks.  A
+ *  repository has FILES text files of about FILESIZE bytes, spread over
+ *  subdirectories of DIRECTORY_SIZE files each, and a history of COMMITS
+ *  commits on master, each of which rewrites a fraction CHURN of the
+ *  files.  Each of its BRANCHES branches then adds one commit of its own,
+ *  and master one more, touching disjoint files, so that every branch
+ *  merges into master without conflict.  Contents are pseudo-random but
+ *  depend only on the parameters, so runs are comparable.
+ *
+ *  Gitlet runs in the directory named by the gitlet.cwd property, which
+ *  must be set before Main is first used: java -Dgitlet.cwd=DIR
+ *  gitlet.SyntheticRepo FILES COMMITS BRANCHES FILESIZE CHURN generates
+ *  a repository in DIR, replacing whatever was there.
+ *  @author Akshay Patel */
+class SyntheticRepo {
+
+    /** Number of files in each subdirectory. */
+    static final int DIRECTORY_SIZE = 100;
+
+    /** Length of each line of a file, counting its newline. */
+    static final int LINE_LENGTH = 64;
+
+    /** Name of the branch that every repository starts on. */
+    static final String MASTER = "master";
+
+    /** Directory of the repository. */
+    private final File _dir;
+
+    /** Number of files. */
+    private final int _files;
+
+    /** Number of commits on master before the branches. */
+    private final int _commits;
+
+    /** Number of branches besides master. */
+    private final int _branches;
+
+    /** Approximate size of each file in bytes. */
+    private final int _fileSize;
+
+    /** Number of files each commit rewrites. */
+    private final int _churn;
+
+    /** Source of file contents. */
+    private final Random _random = new Random(61);
+
+    /** Number of the next file to be changed. */
+    private int _next;
+
+    /** A generator for a repository in DIR with FILES files of FILESIZE
+     *  bytes, COMMITS commits on master, each rewriting the fraction
+     *  CHURN of the files, and BRANCHES other branches. */
+    SyntheticRepo(File dir, int files, int commits, int branches,
+                  int fileSize, double churn) {
+        if (files <= branches || commits < 1 || branches < 0
+            || fileSize < 1) {
+            throw new IllegalArgumentException("bad repository shape");
+        }
+        _dir = dir;
+        _files = files;
+        _commits = commits;
+        _branches = branches;
+        _fileSize = fileSize;
+        _churn = Math.max(1, (int) Math.round(files * churn));
+    }
+
+    /** Usage: java -Dgitlet.cwd=DIR gitlet.SyntheticRepo FILES COMMITS
+     *  BRANCHES FILESIZE CHURN. */
+    public static void main(String... args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: java -Dgitlet.cwd=DIR"
+                    + " gitlet.SyntheticRepo FILES COMMITS BRANCHES"
+                    + " FILESIZE CHURN");
+            System.exit(1);
+        }
+        SyntheticRepo repo =
+            new SyntheticRepo(new File(System.getProperty("gitlet.cwd",
+                    ".")), Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Double.parseDouble(args[4]));
+        repo.generate();
+        System.exit(0);
+    }
+
+    /** Replaces the contents of the repository's directory with a new
+     *  repository.  Throws an IllegalStateException if Main runs in
+     *  some other directory. */
+    void generate() throws IOException {
+        if (!Main.CWD.getCanonicalFile().equals(_dir.getCanonicalFile())) {
+            throw new IllegalStateException("gitlet runs in " + Main.CWD
+                    + ", not " + _dir);
+        }
+        clear();
+        Main.run("init");
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < _files; i += 1) {
+            write(i);
+            all.add(path(i));
+        }
+        add(all);
+        Main.run("commit", message(0));
+        for (int k = 1; k < _commits; k += 1) {
+            add(change(-1));
+            Main.run("commit", message(k));
+        }
+        for (int b = 1; b <= _branches; b += 1) {
+            Main.run("branch", branch(b));
+            Main.run("checkout", branch(b));
+            add(change(b));
+            Main.run("commit", "Work on " + branch(b));
+            Main.run("checkout", MASTER);
+        }
+        if (_branches > 0) {
+            add(change(0));
+            Main.run("commit", "Work on " + MASTER);
+        }
+    }
+
+    /** Deletes the repository and everything else in its directory. */
+    void delete() throws IOException {
+        if (!_dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(_dir.toPath())) {
+            for (Path path : (Iterable<Path>)
+                     paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Rewrites the next CHURN files of partition PARTITION, or of all
+     *  files if PARTITION is negative.  File I is in partition I mod
+     *  (BRANCHES + 1); branch B changes only partition B and master,
+     *  after branching, only partition 0.
+     *  @return the paths of the files changed. */
+    List<String> change(int partition) throws IOException {
+        List<String> result = new ArrayList<>();
+        int partitions = _branches + 1;
+        int candidates = partition < 0 ? _files
+            : (_files - partition + partitions - 1) / partitions;
+        for (int n = 0; n < Math.min(_churn, candidates); n += 1) {
+            int i = _next % candidates;
+            _next += 1;
+            if (partition >= 0) {
+                i = i * partitions + partition;
+            }
+            write(i);
+            result.add(path(i));
+        }
+        return result;
+    }
+
+    /** Returns the path of file I. */
+    String path(int i) {
+        return String.format("d%03d/f%05d.txt", i / DIRECTORY_SIZE, i);
+    }
+
+    /** Returns the file at path PATH. */
+    File file(String path) {
+        return new File(_dir, path);
+    }
+
+    /** Returns the message of commit K on master. */
+    String message(int k) {
+        return "Commit " + k + " rewrites " + (k == 0 ? _files : _churn)
+            + " files";
+    }
+
+    /** Returns the name of branch B, counting from 1. */
+    String branch(int b) {
+        return "branch-" + b;
+    }
+
+    /** Returns the number of branches besides master. */
+    int branches() {
+        return _branches;
+    }
+
+    /** Removes everything in the repository's directory, creating it if
+     *  need be. */
+    private void clear() throws IOException {
+        delete();
+        Files.createDirectories(_dir.toPath());
+    }
+
+    /** Writes new contents to file I. */
+    private void write(int i) throws IOException {
+        File file = file(path(i));
+        file.getParentFile().mkdirs();
+        int lines = Math.max(1, _fileSize / LINE_LENGTH);
+        byte[] contents = new byte[lines * LINE_LENGTH];
+        for (int k = 0; k < contents.length; k += 1) {
+            contents[k] = k % LINE_LENGTH == LINE_LENGTH - 1
+                ? (byte) '\n' : (byte) ('a' + _random.nextInt(26));
+        }
+        Files.write(file.toPath(), contents);
+    }
+
+    /** Stages the files at PATHS. */
+    static void add(List<String> paths) throws IOException {
+        List<String> args = new ArrayList<>();
+        args.add("add");
+        args.addAll(paths);
+        Main.run(args.toArray(new String[0]));
+    }
+
+}
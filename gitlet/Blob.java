@@ -1,11 +1,14 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 
-/** Blob class that stores information of a file.
+/** Blob class that stores information of a file.  Blobs are named by
+ *  the SHA-1 of their contents alone, so identical files share a
+ *  single object in the Blob store.  A Blob does not hold its contents
+ *  unless asked for them; files are hashed, stored and checked out by
+ *  streaming through the Blob store.
  *  @author Akshay Patel*/
-public class Blob implements Serializable {
+public class Blob {
 
     /** SHA-1 of Blob. */
     private String _codeName;
@@ -13,24 +16,56 @@ public class Blob implements Serializable {
     /** Name of Blob file. */
     private String _fileName;
 
-    /** Contents of a file. */
-    private byte[] _contents;
-
     /** Blob folder. */
     static final File BLOB_FOLDER = Utils.join(Main.GITLET_FOLDER, "blobs");
 
-    /** Initializes a blob object with file FILE. */
+    /** Store that holds the contents of every Blob. */
+    static final ObjectStore BLOB_STORE = new ObjectStore(BLOB_FOLDER);
+
+    /** Blobs already looked up, by SHA-1.  Blobs hold no contents, so
+     *  each weighs the same. */
+    static final ObjectCache<Blob> CACHE =
+        Trace.watch("Blob", new ObjectCache<>(1 << 16, 1, blob -> 1));
+
+    /** Type of Blob objects in the Blob store. */
+    static final String TYPE = "blob";
+
+    /** Initializes a blob object with file FILE, hashing its contents
+     *  without storing them. */
     public Blob(File file) {
-        _codeName = Utils.sha1(file.getName()
-                + Utils.readContentsAsString(file));
-        _fileName = file.getName();
-        _contents = Utils.readContents(file);
+        this(file.getName(), ObjectStore.hash(TYPE, file));
+    }
+
+    /** A Blob for file FILENAME named CODENAME. */
+    private Blob(String fileName, String codeName) {
+        _fileName = fileName;
+        _codeName = codeName;
+    }
+
+    /** Saves the contents of FILE in the Blob store, reading it only
+     *  once.
+     * @return the Blob for FILE. */
+    public static Blob store(File file) {
+        long start = Trace.start();
+        Blob blob = new Blob(file.getName(), BLOB_STORE.putFile(TYPE, file));
+        Trace.end("Blob.store", start, file.length());
+        return blob;
     }
 
-    /** Gets contents of Blob.
-     * @return contents. */
+    /** Gets contents of Blob, reading them all into memory, or from
+     * the Blob store's cache.  Prefer writeTo for files that may be
+     * large.
+     * @return contents, which must not be modified. */
     public byte[] getContents() {
-        return _contents;
+        return BLOB_STORE.get(_codeName, TYPE);
+    }
+
+    /** Writes the contents of Blob to FILE, streaming them from the
+     * Blob store and creating FILE's directory if need be.
+     * @param file */
+    public void writeTo(File file) {
+        file.getParentFile().mkdirs();
+        BLOB_STORE.copyTo(_codeName, TYPE, file);
     }
 
     /** Gets SHA1 code of Blob.
@@ -39,21 +74,35 @@ public class Blob implements Serializable {
         return _codeName;
     }
 
+    /** Gets SHA1 code of Blob as an ObjectId.
+     * @return SHA1 code. */
+    public ObjectId getId() {
+        return ObjectId.fromHex(_codeName);
+    }
+
     /** Gets file name of Blob.
      * @return file name. */
     public String getFileName() {
         return _fileName;
     }
 
-    /** Saves Blob for future use in Blob folder. */
-    public void saveBlob() {
-        Utils.writeObject(Utils.join(BLOB_FOLDER, _codeName), this);
+    /** Retrieves the Blob with SHA-1 NAME from the Blob store.
+     * @return Blob. */
+    public static Blob fromFile(String name) {
+        Blob blob = CACHE.get(name);
+        if (blob == null) {
+            if (!BLOB_STORE.contains(name)) {
+                throw Utils.error("No blob %s.", name);
+            }
+            blob = new Blob(null, name);
+            CACHE.put(name, blob);
+        }
+        return blob;
     }
 
-    /** Retrieves and deserializes Blob object from Blob file name NAME
-     * in Blob folder.
+    /** Retrieves the Blob with SHA-1 ID from the Blob store.
      * @return Blob. */
-    public static Blob fromFile(String name) {
-        return Utils.readObject(Utils.join(BLOB_FOLDER, name), Blob.class);
+    public static Blob fromFile(ObjectId id) {
+        return fromFile(id.toHex());
     }
 }
@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A thin client for the gitlet daemon.  Run as java gitlet.Client
+ *  ARGS in place of java gitlet.Main ARGS: if a daemon is serving the
+ *  repository in the current directory, ARGS are sent to it over its
+ *  socket and its output is copied to standard output; otherwise the
+ *  command is run by Main as usual.  A request is the number of
+ *  arguments in decimal followed by a newline, then each argument in
+ *  UTF-8 followed by a NUL byte.  The reply is the command's output,
+ *  up to the end of the connection.  This class uses nothing else in
+ *  gitlet unless it has to run the command itself, so it starts fast.
+ *  @author Akshay Patel */
+public class Client {
+
+    /** The socket of the daemon, in the working directory that Main
+     *  uses. */
+    static final File SOCKET_FILE = new File(
+        new File(System.getProperty("gitlet.cwd", "."), ".gitlet"),
+        "daemon.sock");
+
+    /** Usage: java gitlet.Client ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> .... */
+    public static void main(String... args) throws IOException {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        try (channel) {
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write(request(args));
+            out.flush();
+            channel.shutdownOutput();
+            InputStream in = Channels.newInputStream(channel);
+            in.transferTo(System.out);
+            System.out.flush();
+        }
+        System.exit(0);
+    }
+
+    /** Returns a connection to the daemon, or null if none is running. */
+    static SocketChannel connect() {
+        if (!SOCKET_FILE.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(
+                        UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the request that runs the command ARGS. */
+    static byte[] request(String[] args) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.writeBytes((args.length + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        for (String arg : args) {
+            result.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+            result.write(0);
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** The compact binary format of gitlet's metadata.  A record starts with
+ *  a version byte, and is followed by fields written with the methods
+ *  here, which a decoder reads according to the version: integers as
+ *  varints, seven bits per byte, strings as a varint length and UTF-8,
+ *  and SHA-1s as their 20 raw bytes.  Records written
+ *  by Java serialization, which start with STREAM_MAGIC, are recognized
+ *  so that they can still be read and can be migrated.
+ *  @author Akshay Patel */
+class Codec {
+
+    /** Current version of the format.  Version 1 also encoded the
+     *  records of branches, which refs have since replaced; its commits
+     *  have the same fields, and so are still read. */
+    static final int VERSION = 2;
+
+    /** First two bytes of a record written by Java serialization. */
+    static final int STREAM_MAGIC = 0xaced;
+
+    /** Returns true iff DATA was written by Java serialization. */
+    static boolean isSerialized(byte[] data) {
+        return data.length >= 2
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == STREAM_MAGIC;
+    }
+
+    /** Something that can be written in this format. */
+    interface Encoder {
+        /** Writes the fields of a record to OUT. */
+        void encode(DataOutput out) throws IOException;
+    }
+
+    /** Something that reads the fields of a record. */
+    interface Decoder<T> {
+        /** Returns the record of version VERSION whose fields are read
+         *  from IN. */
+        T decode(DataInput in, int version) throws IOException;
+    }
+
+    /** Returns a record holding the version byte and the fields that
+     *  ENCODER writes. */
+    static byte[] encode(Encoder encoder) {
+        long start = Trace.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            encoder.encode(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("Codec.encode", start, bytes.size());
+        return bytes.toByteArray();
+    }
+
+    /** Returns the record in DATA read by DECODER.  Throws a
+     *  GitletException if DATA is of a later version or is malformed. */
+    static <T> T decode(byte[] data, Decoder<T> decoder) {
+        long start = Trace.start();
+        try (DataInputStream in =
+                 new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+            if (version < 1 || version > VERSION) {
+                throw Utils.error("Unknown metadata version %d.", version);
+            }
+            T result = decoder.decode(in, version);
+            if (in.available() != 0) {
+                throw Utils.error("Malformed metadata.");
+            }
+            Trace.end("Codec.decode", start, data.length);
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Malformed metadata.");
+        }
+    }
+
+    /** Writes the non-negative VALUE to OUT as a varint. */
+    static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /** Returns the varint read from IN. */
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long.");
+    }
+
+    /** Returns the varint read from IN, which must fit in an int. */
+    static int readInt(DataInput in) throws IOException {
+        long value = readVarint(in);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Varint out of range.");
+        }
+        return (int) value;
+    }
+
+    /** Writes STRING to OUT. */
+    static void writeString(DataOutput out, String string)
+        throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns the string read from IN. */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes the SHA-1 ID to OUT. */
+    static void writeId(DataOutput out, String id) throws IOException {
+        out.write(Utils.fromHex(id));
+    }
+
+    /** Returns the SHA-1 read from IN. */
+    static String readId(DataInput in) throws IOException {
+        byte[] id = new byte[Pack.ID_BYTES];
+        in.readFully(id);
+        return Utils.toHex(id);
+    }
+}
@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Codec, the binary format of metadata.
+ *  @author Akshay Patel */
+public class CodecTest {
+
+    /** Varints of every width read back as written, taking a byte per
+     *  seven bits. */
+    @Test
+    public void varintRoundTrip() {
+        long[] values = { 0, 1, 127, 128, 300, 1L << 35,
+                          Integer.MAX_VALUE, Long.MAX_VALUE };
+        int[] widths = { 1, 1, 1, 2, 2, 6, 5, 9 };
+        for (int i = 0; i < values.length; i += 1) {
+            long value = values[i];
+            byte[] data = Codec.encode(out -> Codec.writeVarint(out, value));
+            assertEquals(1 + widths[i], data.length);
+            assertEquals(value, (long) Codec.decode(data,
+                    (in, version) -> Codec.readVarint(in)));
+        }
+    }
+
+    /** Strings and SHA-1s read back as written, SHA-1s taking 20
+     *  bytes. */
+    @Test
+    public void fieldsRoundTrip() {
+        String id = Utils.sha1("codec");
+        String[] strings = { "", "message", "caf\u00e9 \u2603 \ud83d\ude00" };
+        for (String string : strings) {
+            byte[] data = Codec.encode(out -> {
+                Codec.writeString(out, string);
+                Codec.writeId(out, id);
+            });
+            String[] fields = Codec.decode(data, (in, version) ->
+                new String[] { Codec.readString(in), Codec.readId(in) });
+            assertEquals(string, fields[0]);
+            assertEquals(id, fields[1]);
+        }
+        byte[] data = Codec.encode(out -> Codec.writeId(out, id));
+        assertEquals(1 + Pack.ID_BYTES, data.length);
+    }
+
+    /** Records of a later version, with bytes left over, or cut short,
+     *  are refused, as are ints that do not fit. */
+    @Test
+    public void malformedRecords() {
+        byte[] data = Codec.encode(out -> Codec.writeString(out, "text"));
+        byte[] later = data.clone();
+        later[0] = Codec.VERSION + 1;
+        assertRefused(later, "Unknown metadata version");
+        byte[] longer = Arrays.copyOf(data, data.length + 1);
+        assertRefused(longer, "Malformed metadata.");
+        byte[] shorter = Arrays.copyOf(data, data.length - 1);
+        assertRefused(shorter, "Malformed metadata.");
+        byte[] big = Codec.encode(out ->
+            Codec.writeVarint(out, Integer.MAX_VALUE + 1L));
+        try {
+            Codec.decode(big, (in, version) -> Codec.readInt(in));
+            fail("An int out of range was read.");
+        } catch (GitletException excp) {
+            assertEquals("Malformed metadata.", excp.getMessage());
+        }
+        assertFalse(Codec.isSerialized(data));
+        assertTrue(Codec.isSerialized(Utils.serialize("text")));
+    }
+
+    /** Asserts that reading a string from DATA is refused with a message
+     *  starting with MESSAGE. */
+    private static void assertRefused(byte[] data, String message) {
+        try {
+            Codec.decode(data, (in, version) -> Codec.readString(in));
+            fail("A malformed record was read.");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith(message));
+        }
+    }
+
+    /** A commit with two parents reads back with every field intact, and
+     *  encodes to the same bytes again. */
+    @Test
+    public void commitRoundTrip() throws IOException {
+        CommandTest.newRepository();
+        CommandTest.run("branch", "other");
+        CommandTest.commit("f", "1\n", "master \u00e9");
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("g", "2\n", "other");
+        CommandTest.run("merge", "master");
+        Commit head = Commit.fromFile(CommandTest.head());
+        assertNotNull(head.getSecondParentCode());
+        byte[] data = head.encode();
+        Commit copy = Commit.decode(head.getCodeName(), data);
+        assertEquals(head.getCodeName(), copy.getCodeName());
+        assertEquals(head.getTreeCode(), copy.getTreeCode());
+        assertEquals(head.getParentCode(), copy.getParentCode());
+        assertEquals(head.getSecondParentCode(),
+                copy.getSecondParentCode());
+        assertEquals(head.getGeneration(), copy.getGeneration());
+        assertEquals(head.getTimestamp(), copy.getTimestamp());
+        assertEquals(head.getDate(), copy.getDate());
+        assertEquals(head.getMessage(), copy.getMessage());
+        assertArrayEquals(data, copy.encode());
+    }
+
+    /** A repository as the first version of gitlet left it, with
+     *  serialized blobs, commits and branch records and no refs, is
+     *  converted by migrate, keeping its branches, history, files and
+     *  staging area, and a second migrate finds nothing to do. */
+    @Test
+    public void migratesFirstVersion() throws IOException {
+        CommandTest.clearCwd();
+        for (File folder : new File[] { Main.WORKING_TREES,
+                Blob.BLOB_FOLDER, Commit.COMMIT_FOLDER,
+                Legacy.STAGING_AREA, Legacy.REMOVAL_AREA }) {
+            folder.mkdirs();
+        }
+        Legacy.CommitRecord initial = commitRecord("initial commit",
+                "Wed Dec 31 16:00:00 1969 -0800", null);
+        Legacy.CommitRecord one = commitRecord("one",
+                "Thu Jan 1 10:00:00 2015 -0800", initial, "f", "1\n");
+        Legacy.CommitRecord two = commitRecord("two",
+                "Fri Jan 2 10:00:00 2015 GMT", one, "f", "2\n", "g", "g\n");
+        branchRecord("master", two, true);
+        branchRecord("side", one, false);
+        CommandTest.write("f", "3\n");
+        CommandTest.write("h", "h\n");
+        Utils.writeContents(Utils.join(Legacy.STAGING_AREA, "h"), "h\n");
+        Utils.writeContents(Utils.join(Legacy.REMOVAL_AREA, "g"), "g\n");
+
+        assertEquals("Migrated 3 commits and 2 branches.",
+                CommandTest.run("migrate"));
+        assertFalse(Main.WORKING_TREES.exists());
+        assertFalse(Legacy.STAGING_AREA.exists());
+        assertFalse(Utils.join(Commit.COMMIT_FOLDER, two._codeName)
+                .exists());
+        assertEquals("*master\nside", CommandTest.status("Branches"));
+        assertEquals("h", CommandTest.status("Staged Files"));
+        assertEquals("g", CommandTest.status("Removed Files"));
+        assertEquals("f (modified)", CommandTest.status(
+                "Modifications Not Staged For Commit"));
+        String log = CommandTest.run("log");
+        assertEquals(3, CommandTest.count(log, "==="));
+        assertTrue(log.contains("Date: Fri Jan 2 10:00:00 2015 GMT\ntwo"));
+        assertTrue(log.contains("Date: Thu Jan 1 10:00:00 2015 -0800\none"));
+        Commit head = Commit.fromFile(CommandTest.head());
+        assertEquals(1420192800L, head.getTimestamp());
+        assertEquals(2, head.getGeneration());
+        String side = CommandTest.run("find", "one");
+        assertEquals("", CommandTest.run("checkout", side, "--", "f"));
+        assertEquals("1\n", CommandTest.read("f"));
+        assertEquals("Migrated 0 commits and 0 branches.",
+                CommandTest.run("migrate"));
+    }
+
+    /** Returns the first version's record of a commit with MESSAGE, DATE
+     *  and PARENT, holding FILES, pairs of names and contents, whose
+     *  blobs it writes along with it. */
+    private static Legacy.CommitRecord commitRecord(String message,
+            String date, Legacy.CommitRecord parent, String... files) {
+        Legacy.CommitRecord commit = new Legacy.CommitRecord();
+        commit._message = message;
+        commit._date = date;
+        commit._parent = parent;
+        commit._namesAndCodes = new TreeMap<>();
+        StringBuilder codes = new StringBuilder();
+        for (int i = 0; i < files.length; i += 2) {
+            Legacy.BlobRecord blob = new Legacy.BlobRecord();
+            blob._fileName = files[i];
+            blob._contents = files[i + 1].getBytes(StandardCharsets.UTF_8);
+            blob._codeName = Utils.sha1(files[i] + files[i + 1]);
+            writeRecord(Utils.join(Blob.BLOB_FOLDER, blob._codeName), blob);
+            commit._namesAndCodes.put(blob._fileName, blob._codeName);
+            codes.append(blob._codeName);
+        }
+        commit._codeName = Utils.sha1(message + date
+                + (parent == null ? "" : parent._codeName) + codes);
+        writeRecord(Utils.join(Commit.COMMIT_FOLDER, commit._codeName),
+                commit);
+        return commit;
+    }
+
+    /** Writes the first version's record of branch NAME, whose head is
+     *  HEAD, and which is current iff CURRENT. */
+    private static void branchRecord(String name, Legacy.CommitRecord head,
+                                     boolean current) {
+        Legacy.BranchRecord branch = new Legacy.BranchRecord();
+        branch._name = name;
+        branch._head = head._codeName;
+        branch._isCurrent = current;
+        writeRecord(Utils.join(Main.WORKING_TREES, name), branch);
+    }
+
+    /** Writes RECORD to FILE by Java serialization, naming its class as
+     *  the first version did, rather than as the Record class it is. */
+    private static void writeRecord(File file, Serializable record) {
+        byte[] data = Utils.serialize(record);
+        for (Map.Entry<String, Class<?>> entry
+                 : Legacy.RECORDS.entrySet()) {
+            data = replaceName(data, entry.getValue().getName(),
+                    entry.getKey());
+        }
+        Utils.writeContents(file, data);
+    }
+
+    /** Returns DATA with each occurrence of the class name FROM, as
+     *  serialization writes it, preceded by its length, replaced by
+     *  TO. */
+    private static byte[] replaceName(byte[] data, String from, String to) {
+        byte[] pattern = lengthPrefixed(from);
+        byte[] replacement = lengthPrefixed(to);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < data.length) {
+            if (i + pattern.length <= data.length
+                    && Arrays.equals(pattern, Arrays.copyOfRange(data, i,
+                            i + pattern.length))) {
+                result.writeBytes(replacement);
+                i += pattern.length;
+            } else {
+                result.write(data[i]);
+                i += 1;
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Returns NAME in UTF-8 preceded by its length in two bytes. */
+    private static byte[] lengthPrefixed(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[bytes.length + 2];
+        result[0] = (byte) (bytes.length >> 8);
+        result[1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, result, 2, bytes.length);
+        return result;
+    }
+}
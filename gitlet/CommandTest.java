@@ -0,0 +1,441 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of whole commands, each run on a new repository in Main.CWD.
+ *  @author Akshay Patel */
+public class CommandTest {
+
+    /** The system property naming the directory gitlet runs in. */
+    static final String CWD_PROPERTY = "gitlet.cwd";
+
+    /** Empties Main.CWD and makes a new repository there. */
+    @Before
+    public void setUp() throws IOException {
+        newRepository();
+    }
+
+    /** Empties Main.CWD and makes a new repository there, for the tests
+     *  of other classes that run commands. */
+    static void newRepository() throws IOException {
+        clearCwd();
+        assertEquals("", run("init"));
+    }
+
+    /** Empties Main.CWD.  Refuses to run unless gitlet.cwd names the
+     *  directory, so that the tests never empty a directory they were
+     *  not given. */
+    static void clearCwd() throws IOException {
+        if (System.getProperty(CWD_PROPERTY) == null) {
+            throw new IllegalStateException(CWD_PROPERTY + " is not set.");
+        }
+        clear(Main.CWD);
+    }
+
+    /** Deletes everything in DIR, leaving DIR itself. */
+    static void clear(File dir) throws IOException {
+        dir.mkdirs();
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .filter(path -> !path.equals(dir.toPath()))
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** Returns what the command ARGS prints, or the message of the
+     *  GitletException it throws. */
+    static String run(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            System.setOut(stdout);
+        }
+        return bytes.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    /** Starts the command ARGS in another JVM, on the repository in
+     *  Main.CWD, with its output and errors on the returned process's
+     *  input stream. */
+    static Process start(String... args) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Path.of(System.getProperty("java.home"), "bin", "java")
+                    .toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-D" + CWD_PROPERTY + "=" + Main.CWD.getAbsolutePath(),
+                "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    /** Returns what the command ARGS prints when run in another JVM, once
+     *  it has finished. */
+    static String runElsewhere(String... args) throws IOException {
+        return output(start(args));
+    }
+
+    /** Returns what PROCESS, started by start, prints, once it has
+     *  finished. */
+    static String output(Process process) throws IOException {
+        String out = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return out.trim();
+    }
+
+    /** Writes CONTENTS to the working file NAME, making its folders. */
+    static void write(String name, String contents) {
+        File file = Utils.join(Main.CWD, name);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, contents);
+    }
+
+    /** Commits CONTENTS as the working file NAME with message
+     *  MESSAGE. */
+    static void commit(String name, String contents, String message)
+        throws IOException {
+        write(name, contents);
+        run("add", name);
+        run("commit", message);
+    }
+
+    /** Returns the contents of the working file NAME. */
+    static String read(String name) {
+        return Utils.readContentsAsString(Utils.join(Main.CWD, name));
+    }
+
+    /** Returns the section of the output of status headed HEADING. */
+    static String status(String heading) throws IOException {
+        return section(run("status"), heading);
+    }
+
+    /** Returns the section of the output STATUS of status under
+     *  HEADING, trimmed. */
+    static String section(String status, String heading) {
+        int start = status.indexOf("=== " + heading + " ===");
+        int end = status.indexOf("===", start + heading.length() + 8);
+        return status.substring(start + heading.length() + 8,
+                end == -1 ? status.length() : end).trim();
+    }
+
+    /** A file committed in place of a directory of the same name. */
+    @Test
+    public void fileReplacesDirectory() throws IOException {
+        commit("a/x", "x\n", "c1");
+        Utils.join(Main.CWD, "a", "x").delete();
+        Utils.join(Main.CWD, "a").delete();
+        write("a", "file\n");
+        run("add", "a");
+        run("rm", "a/x");
+        assertEquals("", run("commit", "c2"));
+        assertEquals("", status("Staged Files"));
+        assertEquals("", status("Removed Files"));
+        Utils.join(Main.CWD, "a").delete();
+        assertEquals("", run("checkout", "--", "a"));
+        assertEquals("file\n", read("a"));
+    }
+
+    /** A directory committed in place of a file of the same name. */
+    @Test
+    public void directoryReplacesFile() throws IOException {
+        commit("a", "file\n", "c1");
+        run("rm", "a");
+        write("a/x", "x\n");
+        run("add", "a/x");
+        assertEquals("", run("commit", "c2"));
+        Utils.join(Main.CWD, "a", "x").delete();
+        assertEquals("", run("checkout", "--", "a/x"));
+        assertEquals("x\n", read("a/x"));
+    }
+
+    /** Branch names that would leave the refs folder are refused. */
+    @Test
+    public void branchNamesStayInRefs() throws IOException {
+        write("f", "f\n");
+        run("add", "f");
+        for (String name : new String[] {
+                "../index", "../HEAD", "..", ".", "", "a/b", "a\\b",
+                "x.lock" }) {
+            assertEquals("Not a valid branch name.", run("branch", name));
+            assertEquals("A branch with that name does not exist.",
+                    run("rm-branch", name));
+            assertEquals("No such branch exists.", run("checkout", name));
+        }
+        assertTrue(Utils.join(Main.GITLET_FOLDER, "index").isFile());
+        assertTrue(Main.HEAD_FILE.isFile());
+        assertEquals("f", status("Staged Files"));
+        assertEquals("", run("branch", "other"));
+        assertEquals("", run("rm-branch", "other"));
+    }
+
+    /** status and diff, which hold the lock shared, leave the index as
+     *  it is even when they find stale stat data. */
+    @Test
+    public void readersLeaveIndex() throws IOException {
+        commit("f", "f\n", "one");
+        File index = Utils.join(Main.GITLET_FOLDER, "index");
+        byte[] before = Utils.readContents(index);
+        long modified = index.lastModified();
+        Utils.join(Main.CWD, "f").setLastModified(modified - 60000);
+        assertEquals("", status("Modifications Not Staged For Commit"));
+        assertEquals("", run("diff"));
+        assertArrayEquals(before, Utils.readContents(index));
+        assertEquals(modified, index.lastModified());
+    }
+
+    /** A commit log record torn by a crash is found and the log is
+     *  rebuilt, both when it is read and before it is appended to. */
+    @Test
+    public void tornLogRecord() throws IOException {
+        commit("f", "1\n", "first words");
+        File log = Utils.join(Main.GITLET_FOLDER, "commit-log");
+        byte[] whole = Utils.readContents(log);
+        commit("f", "2\n", "second words");
+        byte[] longer = Utils.readContents(log);
+        Utils.writeContents(log, Arrays.copyOf(longer,
+                whole.length + (longer.length - whole.length) / 2));
+        assertEquals(3, count(run("global-log"), "commit "));
+        assertEquals(1, count(run("find", "second words"), "\n") + 1);
+        Utils.writeContents(log, Utils.readContents(log),
+                new byte[] { 0, 0, 0, 0, 0, 0, 0, 0 });
+        commit("f", "3\n", "third words");
+        assertEquals(4, count(run("global-log"), "commit "));
+        assertArrayEquals(longer,
+                Arrays.copyOf(Utils.readContents(log),
+                        longer.length));
+    }
+
+    /** Once more commits are made than the commit graph scans, they are
+     *  found through its lookup file, and split points are found among
+     *  them. */
+    @Test
+    public void graphLookup() throws IOException {
+        run("branch", "other");
+        for (int i = 0; i <= CommitGraph.LOOKUP_LIMIT; i += 1) {
+            commit("f", i + "\n", "master " + i);
+        }
+        run("checkout", "other");
+        commit("g", "other\n", "other");
+        assertTrue(new File(CommitGraph.GRAPH_FILE.getPath()
+                + CommitGraph.LOOKUP_SUFFIX).isFile());
+        String[] lines = run("global-log").split("\n");
+        CommitGraph graph = CommitGraph.read();
+        int commits = 0;
+        for (String line : lines) {
+            if (line.startsWith("commit ")) {
+                String id = line.substring("commit ".length());
+                assertEquals(id, graph.id(graph.indexOf(id)));
+                commits += 1;
+            }
+        }
+        assertEquals(CommitGraph.LOOKUP_LIMIT + 3, commits);
+        assertEquals(CommitGraph.NONE,
+                graph.indexOf(Utils.sha1("missing")));
+        assertEquals("", run("merge", "master"));
+        assertEquals(CommitGraph.LOOKUP_LIMIT + "\n", read("f"));
+        assertEquals("other\n", read("g"));
+    }
+
+    /** Without the exclusive lock, a missing id index is answered
+     *  around rather than rebuilt; a command that changes the repository
+     *  rebuilds it. */
+    @Test
+    public void idIndexReaders() throws IOException {
+        commit("f", "1\n", "one");
+        String head = head();
+        File index = Utils.join(Commit.COMMIT_FOLDER, "ids");
+        File journal = Utils.join(Commit.COMMIT_FOLDER, "ids.journal");
+        index.delete();
+        long journaled = journal.length();
+        String prefix = head.substring(0, IdIndex.MIN_PREFIX + 2);
+        assertEquals(Arrays.asList(head),
+                Commit.COMMIT_STORE.resolve(prefix));
+        assertFalse(index.exists());
+        assertEquals(journaled, journal.length());
+        write("f", "2\n");
+        assertEquals("", run("checkout", prefix, "--", "f"));
+        assertEquals("1\n", read("f"));
+        assertTrue(index.isFile());
+    }
+
+    /** Checking out a branch writes only the files whose contents
+     *  differ from the current branch's, leaving the others, and their
+     *  modification times, alone, and deletes the files it does not
+     *  track. */
+    @Test
+    public void checkoutRewritesChanges() throws IOException {
+        commit("same", "s\n", "same");
+        commit("d/changed", "1\n", "changed");
+        commit("gone", "g\n", "gone");
+        run("branch", "other");
+        run("checkout", "other");
+        commit("d/changed", "2\n", "changed there");
+        run("rm", "gone");
+        commit("d/new", "n\n", "new there");
+        run("checkout", "master");
+        long old = 1_000_000_000L;
+        File same = Utils.join(Main.CWD, "same");
+        File changed = Utils.join(Main.CWD, "d", "changed");
+        same.setLastModified(old);
+        changed.setLastModified(old);
+        assertEquals("", run("checkout", "other"));
+        assertEquals(old, same.lastModified());
+        assertNotEquals(old, changed.lastModified());
+        assertEquals("2\n", read("d/changed"));
+        assertEquals("n\n", read("d/new"));
+        assertFalse(Utils.join(Main.CWD, "gone").exists());
+        assertEquals("", status("Modifications Not Staged For Commit"));
+        assertEquals("", status("Untracked Files"));
+        assertEquals("", run("checkout", "master"));
+        assertEquals(old, same.lastModified());
+        assertEquals("1\n", read("d/changed"));
+        assertEquals("g\n", read("gone"));
+        assertFalse(Utils.join(Main.CWD, "d", "new").exists());
+    }
+
+    /** A file whose size, modification time or inode differs from its
+     *  index entry is hashed again and found modified if its contents
+     *  changed, and one whose stat data alone changed is not.  A file
+     *  modified no earlier than the index was written is hashed even if
+     *  its stat data match, since it may have changed again within the
+     *  same tick of the clock. */
+    @Test
+    public void indexStatData() throws IOException {
+        File file = Utils.join(Main.CWD, "f");
+        FileTime old = FileTime.fromMillis(1_000_000_000L);
+        write("f", "1\n");
+        Files.setLastModifiedTime(file.toPath(), old);
+        commit("f", "1\n", "one");
+        Files.setLastModifiedTime(file.toPath(), old);
+        run("add", "f");
+        String modified = "Modifications Not Staged For Commit";
+        assertEquals("", status(modified));
+        file.setLastModified(old.toMillis() + 60000);
+        assertEquals("", status(modified));
+        Files.setLastModifiedTime(file.toPath(), old);
+        write("f", "22\n");
+        Files.setLastModifiedTime(file.toPath(), old);
+        assertEquals("f (modified)", status(modified));
+        File other = Utils.join(Main.CWD, "g");
+        Utils.writeContents(other, "2\n");
+        Files.setLastModifiedTime(other.toPath(), old);
+        Files.move(other.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        assertEquals("f (modified)", status(modified));
+        write("f", "1\n");
+        assertEquals("", status(modified));
+        FileTime late = FileTime.fromMillis(
+                System.currentTimeMillis() + 60000);
+        write("f", "3\n");
+        Files.setLastModifiedTime(file.toPath(), late);
+        run("add", "f");
+        write("f", "4\n");
+        Files.setLastModifiedTime(file.toPath(), late);
+        assertEquals("f (modified)", status(modified));
+    }
+
+    /** add stages the files a glob matches among the working files, the
+     *  files under a directory and those of several operands at once,
+     *  and stages nothing if any operand stands for no file. */
+    @Test
+    public void addGlobs() throws IOException {
+        write("a.txt", "a\n");
+        write("b.txt", "b\n");
+        write("c.md", "c\n");
+        write("d/e.txt", "e\n");
+        write("d/f/g.c", "g\n");
+        write("d/h.c", "h\n");
+        assertEquals("", run("add", "*.txt"));
+        assertEquals("a.txt\nb.txt", status("Staged Files"));
+        assertEquals("File does not exist.",
+                run("add", "c.md", "*.none"));
+        assertEquals("File does not exist.", run("add", "d/none"));
+        assertEquals("a.txt\nb.txt", status("Staged Files"));
+        assertEquals("", run("add", "d/*.c", "[c].md"));
+        assertEquals("a.txt\nb.txt\nc.md\nd/h.c", status("Staged Files"));
+        assertEquals("", run("add", "d/f"));
+        assertEquals("d/e.txt", status("Untracked Files"));
+        assertEquals("", run("add", "d/**.txt"));
+        assertEquals("", status("Untracked Files"));
+        assertEquals("", run("commit", "all"));
+        write("b.txt", "b2\n");
+        write("d/f/g.c", "g2\n");
+        assertEquals("", run("add", "."));
+        assertEquals("b.txt\nd/f/g.c", status("Staged Files"));
+    }
+
+    /** A command waits while another process holds the repository's
+     *  lock exclusively, and runs once it is released.  While the lock
+     *  is held shared, a command that only reads runs at once, but one
+     *  that writes still waits. */
+    @Test
+    public void lockBlocksCommands() throws IOException,
+                                            InterruptedException {
+        commit("f", "1\n", "one");
+        Process reader;
+        try {
+            RepositoryLock.acquire(Main.GITLET_FOLDER, false);
+            reader = start("status");
+            assertFalse(reader.waitFor(2, TimeUnit.SECONDS));
+        } finally {
+            RepositoryLock.releaseAll();
+        }
+        assertEquals("*master", section(output(reader), "Branches"));
+        Process writer;
+        try {
+            RepositoryLock.acquire(Main.GITLET_FOLDER, true);
+            assertEquals("*master",
+                    section(runElsewhere("status"), "Branches"));
+            writer = start("branch", "other");
+            assertFalse(writer.waitFor(2, TimeUnit.SECONDS));
+            assertFalse(Utils.join(Main.REFS_FOLDER, "other").exists());
+        } finally {
+            RepositoryLock.releaseAll();
+        }
+        assertEquals("", output(writer));
+        assertEquals("*master\nother", status("Branches"));
+    }
+
+    /** Returns the SHA-1 of the current head commit, as log prints it.
+     *  Refs are read only through commands, so that no test leaves the
+     *  Journal expecting what a ref held. */
+    static String head() throws IOException {
+        return run("log").split("\n")[1].substring("commit ".length());
+    }
+
+    /** Returns the number of times WORD occurs in TEXT. */
+    static int count(String text, String word) {
+        int result = 0;
+        for (int i = text.indexOf(word); i != -1;
+             i = text.indexOf(word, i + 1)) {
+            result += 1;
+        }
+        return result;
+    }
+}
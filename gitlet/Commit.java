@@ -1,35 +1,87 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 
 
 /** Commit class that stores information of which Blobs are tracked.
  *  @author Akshay Patel*/
 public class Commit implements Serializable {
 
+    /** Version of the serialized form of Commit that Codec.isSerialized
+     * commits were written in, kept so that they can be migrated. */
+    private static final long serialVersionUID = -8390622840379935886L;
+
     /** Message that accompanies a Commit command. */
     private String _message;
 
     /** Commit folder. */
     static final File COMMIT_FOLDER = Utils.join(Main.GITLET_FOLDER, "commits");
 
+    /** Store that holds every Commit. */
+    static final ObjectStore COMMIT_STORE = new ObjectStore(COMMIT_FOLDER);
+
+    /** Type of Commit objects in the Commit store. */
+    static final String TYPE = "commit";
+
+    /** Commits already read, by SHA1, weighed by their approximate size
+     * in bytes.  A commit whose files have been listed is weighed again,
+     * and is only held weakly if it tracks many files. */
+    static final ObjectCache<Commit> CACHE = Trace.watch("Commit",
+        new ObjectCache<>(1 << 24, 1 << 20, Commit::weight));
+
+    /** Approximate size in bytes of a Commit, and of each of its files
+     * once they are listed. */
+    private static final int WEIGHT = 256;
+
     /** SHA-1 of Commit. */
     private String _codeName;
 
-    /** Parent of this Commit. */
-    private Commit _parent;
+    /** SHA-1 of the parent of this Commit, or null for the initial
+     * commit. */
+    private String _parentCode;
+
+    /** Parent of this Commit, if it was given one when made. */
+    private transient Commit _parent;
+
+    /** SHA-1 of the second parent of a merge Commit, or null. */
+    private String _secondParentCode;
+
+    /** Length of the longest path from this Commit to the initial
+     * commit, which is 0. */
+    private int _generation;
 
     /** Time of Commit. */
     private String _date;
 
-    /** TreeMap with key of name of file and value
-     * of corresponding Blob file code. */
-    private TreeMap<String, String> _namesAndCodes;
+    /** Time of Commit, in seconds since the epoch. */
+    private long _timestamp;
+
+    /** SHA-1 of the root Tree of this Commit's files, or null if they
+     * have changed since it was last computed. */
+    private String _treeCode;
+
+    /** SHA-1 of the Tree that _changes apply to, or null for none. */
+    private transient String _baseTreeCode;
+
+    /** Files added to or removed from the Tree named _baseTreeCode, by
+     * path, mapped to the SHA-1s of their blobs or to null if removed. */
+    private transient TreeMap<String, ObjectId> _changes;
+
+    /** TreeMap with key of path of file and value
+     * of corresponding Blob file code, read from the Trees on first use. */
+    private transient TreeMap<String, ObjectId> _namesAndCodes;
 
     /** Commit object initializer.
      * @param message
@@ -37,48 +89,122 @@ public class Commit implements Serializable {
      * @param parent
      * parent commit */
     public Commit(String message, Commit parent) {
+        this(message, parent, null);
+    }
+
+    /** Commit object initializer for a merge.
+     * @param message
+     * Message of commit
+     * @param parent
+     * parent commit
+     * @param secondParent
+     * commit merged into parent, or null */
+    public Commit(String message, Commit parent, Commit secondParent) {
         if (parent == null) {
             _date = "Wed Dec 31 16:00:00 1969 -0800";
+            _timestamp = 0;
         } else {
-            _date = getTime();
+            ZonedDateTime now = ZonedDateTime.now();
+            _date = getTime(now);
+            _timestamp = now.toEpochSecond();
         }
         if (parent != null) {
-            _namesAndCodes = parent.getBlobMap();
+            _treeCode = parent.getTreeCode();
+            _parentCode = parent.getCodeName();
         } else {
-            _namesAndCodes = new TreeMap<String, String>();
+            _changes = new TreeMap<String, ObjectId>();
+            _parentCode = null;
         }
         _parent = parent;
+        _generation = parent == null ? 0 : parent.getGeneration() + 1;
+        if (secondParent != null) {
+            _secondParentCode = secondParent.getCodeName();
+            _generation = Math.max(_generation,
+                    secondParent.getGeneration() + 1);
+        }
         _message = message;
         _codeName = null;
     }
 
-    /** Gets the SHA1 code of commit.
-     * @return SHA1. */
-    public String getSixSHA1() {
-        String sixChars = "";
-        for (int i = 0; i < 8; i += 1) {
-            sixChars += _codeName.charAt(i);
-        }
-        return sixChars;
-    }
-
-    /** Gets the parent Commit of commit.
+    /** Gets the parent Commit of commit, reading it through the cache
+     * rather than holding on to it, so that cached commits do not keep
+     * their whole history in memory.
      * @return parent Commit. */
     public Commit getParent() {
+        if (_parent == null && _parentCode != null) {
+            return fromFile(_parentCode);
+        }
         return _parent;
     }
 
+    /** Gets the SHA1 code of the parent of commit.
+     * @return parent SHA1, or null for the initial commit. */
+    public String getParentCode() {
+        return _parentCode;
+    }
+
+    /** Gets the SHA1 code of the second parent of a merge commit.
+     * @return SHA1, or null if commit is not a merge. */
+    public String getSecondParentCode() {
+        return _secondParentCode;
+    }
+
+    /** Gets the generation number of commit: 0 for the initial commit,
+     * and otherwise one more than the largest generation of its parents.
+     * @return generation. */
+    public int getGeneration() {
+        return _generation;
+    }
+
     /** Gets the message of commit.
      * @return message. */
     public String getMessage() {
         return _message;
     }
 
-    /** Gets time of commit.
+    /** Gets date of commit, as printed by the log.
+     * @return date. */
+    public String getDate() {
+        return _date;
+    }
+
+    /** Gets time of commit, in seconds since the epoch.
+     * @return time. */
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    /** Sets the date of commit, as printed by the log, to DATE, which
+     * must be in the form getTime gives, as for commits converted from
+     * older versions, and its time to match.
+     * @param date
+     * date of commit */
+    void setDate(String date) {
+        String[] fields = date.split(" ");
+        try {
+            if (fields.length != 6) {
+                throw new DateTimeException(date);
+            }
+            LocalDateTime time = LocalDateTime.parse(
+                    String.join(" ", Arrays.copyOfRange(fields, 1, 5)),
+                    DateTimeFormatter.ofPattern("MMM d HH:mm:ss yyyy",
+                            Locale.US));
+            ZoneOffset offset = fields[5].equals("GMT") ? ZoneOffset.UTC
+                : ZoneOffset.of(fields[5]);
+            _timestamp = time.toEpochSecond(offset);
+        } catch (DateTimeException excp) {
+            throw Utils.error("Malformed date: %s.", date);
+        }
+        _date = date;
+    }
+
+    /** Formats a time for the log.
+     * @param time
+     * time of commit
      * @return time. */
-    private String getTime() {
+    private String getTime(ZonedDateTime time) {
         String output = DateTimeFormatter
-                .RFC_1123_DATE_TIME.format(ZonedDateTime.now());
+                .RFC_1123_DATE_TIME.format(time);
         String[] splitOutput = output.split(",");
         output = splitOutput[0] + splitOutput[1];
         splitOutput = output.split(" ");
@@ -87,29 +213,79 @@ public class Commit implements Serializable {
                 + " " + splitOutput[3] + " " + splitOutput[5];
     }
 
-    /** Adds Blob object to a list of strings
-     * indicating the Commit's blob files.
-     * @param blob */
-    public void addBlob(Blob blob) {
-        _namesAndCodes.put(blob.getFileName(), blob.getBlobSHA1());
+    /** Records that the commit tracks blob BLOBCODE as file FILENAME.
+     * @param fileName
+     * @param blobCode */
+    public void addBlob(String fileName, ObjectId blobCode) {
+        change(fileName, blobCode);
     }
 
     /** Removes blob from the TreeMap of Blobs.
      * @param file */
     public void removeBlob(String file) {
-        _namesAndCodes.remove(file);
+        change(file, null);
+    }
+
+    /** Records that file FILE now has blob CODE, or is removed if CODE
+     * is null.  Only changes are kept until the commit is saved, when
+     * they are applied to the Trees on their paths.
+     * @param file
+     * @param code */
+    private void change(String file, ObjectId code) {
+        if (_treeCode != null) {
+            _baseTreeCode = _treeCode;
+            _changes = new TreeMap<String, ObjectId>();
+            _treeCode = null;
+        }
+        _changes.put(file, code);
+        if (_namesAndCodes != null && code == null) {
+            _namesAndCodes.remove(file);
+        } else if (_namesAndCodes != null) {
+            _namesAndCodes.put(file, code);
+        }
     }
 
     /** Returns a TreeMap of files of Blobs in
-     * the form of strings of their file names and SHA-1 codes. */
-    public TreeMap<String, String> getBlobMap() {
+     * the form of strings of their paths and SHA-1 codes. */
+    public TreeMap<String, ObjectId> getBlobMap() {
+        if (_namesAndCodes == null && _treeCode != null) {
+            long start = Trace.start();
+            _namesAndCodes = Tree.files(_treeCode);
+            Trace.end("Commit.getBlobMap", start);
+            if (_codeName != null) {
+                CACHE.put(_codeName, this);
+            }
+        } else if (_namesAndCodes == null) {
+            _namesAndCodes = _baseTreeCode == null
+                ? new TreeMap<String, ObjectId>()
+                : Tree.files(_baseTreeCode);
+            for (Map.Entry<String, ObjectId> file : _changes.entrySet()) {
+                if (file.getValue() == null) {
+                    _namesAndCodes.remove(file.getKey());
+                } else {
+                    _namesAndCodes.put(file.getKey(), file.getValue());
+                }
+            }
+        }
         return _namesAndCodes;
     }
 
     /** Clone the specified Commit into this commit.
      * @param commit */
     public void cloneBlob(Commit commit) {
-        _namesAndCodes.putAll(commit.getBlobMap());
+        for (Map.Entry<String, ObjectId> file
+                 : commit.getBlobMap().entrySet()) {
+            change(file.getKey(), file.getValue());
+        }
+    }
+
+    /** Returns the SHA1 of the root Tree of the commit's files, saving
+     * the Trees that its changes touch. */
+    public String getTreeCode() {
+        if (_treeCode == null) {
+            _treeCode = Tree.update(_baseTreeCode, _changes);
+        }
+        return _treeCode;
     }
 
     /** Returns the SHA1 of the commit. */
@@ -122,46 +298,180 @@ public class Commit implements Serializable {
      * File name of blob
      * @return Blob */
     public Blob getBlob(String fileName) {
-        return Blob.fromFile(_namesAndCodes.get(fileName));
+        return Blob.fromFile(getBlobMap().get(fileName));
     }
 
     /** Gets log message of commit.
      * @return Log of commit */
     public String getLog() {
+        return log(_codeName, _parentCode, _secondParentCode, _date,
+                _message);
+    }
+
+    /** Formats an entry of the log.
+     * @param code
+     * SHA1 of a commit
+     * @param parentCode
+     * SHA1 of its parent, or null
+     * @param secondParentCode
+     * SHA1 of its second parent, or null
+     * @param date
+     * date of the commit
+     * @param message
+     * message of the commit
+     * @return Log of the commit */
+    static String log(String code, String parentCode,
+                      String secondParentCode, String date, String message) {
+        String merge = "";
+        if (secondParentCode != null) {
+            merge = "Merge: " + parentCode.substring(0, 7) + " "
+                    + secondParentCode.substring(0, 7) + "\n";
+        }
         return "===" + "\n"
-                + "commit " + _codeName + "\n"
-                + "Date: " + _date + "\n"
-                + _message + "\n";
+                + "commit " + code + "\n"
+                + merge
+                + "Date: " + date + "\n"
+                + message + "\n";
     }
 
-    /** Sets the codename for the Commit.
+    /** Sets the codename for the Commit: the SHA1 of a canonical
+     * form listing its Tree, its parents, its date and its message.
      * @return SHA1 code for Commit. */
     private String setCodeName() {
-        if (_parent == null) {
-            return Utils.sha1(_message + _date);
+        StringBuilder form = new StringBuilder();
+        form.append("tree ").append(getTreeCode()).append('\n');
+        if (_parentCode != null) {
+            form.append("parent ").append(_parentCode).append('\n');
         }
-        String blobs = "";
-        ArrayList<String> keySet =
-                new ArrayList<String>(_namesAndCodes.keySet());
-        for (String blob : keySet) {
-            blobs += _namesAndCodes.get(blob);
+        if (_secondParentCode != null) {
+            form.append("parent ").append(_secondParentCode).append('\n');
         }
-        return Utils.sha1(_message + _date + _parent.getCodeName() + blobs);
+        form.append("date ").append(_date).append("\n\n").append(_message);
+        return ObjectStore.hash(TYPE,
+                form.toString().getBytes(StandardCharsets.UTF_8));
     }
 
 
-    /** Saves Commit for future use in COMMIT folder. */
+    /** Saves Commit for future use in COMMIT folder, publishing it and
+     * its files before the commit graph and log name it. */
     public void saveCommit() {
+        long start = Trace.start();
         _codeName = setCodeName();
-        Utils.writeObject(Utils.join(COMMIT_FOLDER, _codeName), this);
+        boolean isNew = !COMMIT_STORE.contains(_codeName);
+        COMMIT_STORE.put(_codeName, TYPE, encode());
+        Journal.flush();
+        CommitGraph.append(this);
+        if (isNew) {
+            CommitLog.append(this);
+        }
+        Trace.end("Commit.saveCommit", start);
     }
 
-    /** Retrieves and deserializes Commit object from Commit file name CODENAME
+    /** Adds Commit, which was copied into the Commit store from another
+     * repository rather than saved, to the commit graph and the commit
+     * log.  Its parents must already have been added. */
+    void index() {
+        Journal.flush();
+        CommitGraph.append(this);
+        CommitLog.append(this);
+    }
+
+    /** Retrieves and decodes Commit object from Commit file name CODENAME
      * in COMMIT folder.
      * @return Commit */
     public static Commit fromFile(String codeName) {
-        return Utils.readObject
-                (Utils.join(COMMIT_FOLDER, codeName), Commit.class);
+        Commit commit = CACHE.get(codeName);
+        if (commit == null) {
+            long start = Trace.start();
+            commit = decode(codeName, COMMIT_STORE.get(codeName, TYPE));
+            CACHE.put(codeName, commit);
+            Trace.end("Commit.fromFile", start);
+        }
+        return commit;
+    }
+
+    /** Returns the stored form of Commit: its Tree, its parents, its
+     * generation, its time, its date and its message, in Codec's format.
+     * @return bytes */
+    byte[] encode() {
+        return Codec.encode(out -> {
+            Codec.writeId(out, getTreeCode());
+            int parents = _parentCode == null ? 0
+                : _secondParentCode == null ? 1 : 2;
+            Codec.writeVarint(out, parents);
+            if (parents > 0) {
+                Codec.writeId(out, _parentCode);
+            }
+            if (parents > 1) {
+                Codec.writeId(out, _secondParentCode);
+            }
+            Codec.writeVarint(out, _generation);
+            Codec.writeVarint(out, _timestamp);
+            Codec.writeString(out, _date);
+            Codec.writeString(out, _message);
+        });
+    }
+
+    /** Returns the Commit named CODENAME whose stored form is DATA, which
+     * may also have been written by Java serialization.
+     * @param codeName
+     * SHA1 of the commit
+     * @param data
+     * stored form of the commit
+     * @return Commit */
+    static Commit decode(String codeName, byte[] data) {
+        if (Codec.isSerialized(data)) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        return Codec.decode(data, (in, version) -> {
+            Commit commit = new Commit();
+            commit._codeName = codeName;
+            commit._treeCode = Codec.readId(in);
+            int parents = Codec.readInt(in);
+            if (parents > 2) {
+                throw new IOException("Too many parents.");
+            }
+            if (parents > 0) {
+                commit._parentCode = Codec.readId(in);
+            }
+            if (parents > 1) {
+                commit._secondParentCode = Codec.readId(in);
+            }
+            commit._generation = Codec.readInt(in);
+            commit._timestamp = Codec.readVarint(in);
+            commit._date = Codec.readString(in);
+            commit._message = Codec.readString(in);
+            return commit;
+        });
+    }
+
+    /** A Commit whose fields are to be decoded. */
+    private Commit() {
+    }
+
+    /** Returns the approximate size of this Commit in bytes.
+     * @return weight */
+    private long weight() {
+        return WEIGHT * (1L + (_namesAndCodes == null ? 0
+                : _namesAndCodes.size()));
+    }
+
+    /** Returns the latest common ancestor of commits FIRST and SECOND,
+     * found by walking the commit graph rather than Commit objects.
+     * @param first
+     * SHA1 of a commit
+     * @param second
+     * SHA1 of another commit
+     * @return SHA1 of the split point */
+    public static String splitPoint(String first, String second) {
+        CommitGraph graph = CommitGraph.readWith(first, second);
+        return graph.id(graph.splitPoint(graph.indexOf(first),
+                graph.indexOf(second)));
+    }
+
+    /** Returns true iff a Commit named CODENAME has been saved. */
+    public static boolean exists(String codeName) {
+        return COMMIT_STORE.contains(codeName);
     }
 
 }
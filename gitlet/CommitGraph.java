@@ -0,0 +1,489 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The commit graph: a file of fixed-width records, one per commit,
+ *  holding its SHA-1, the record numbers of its parents, its time,
+ *  its generation number and the SHA-1 of its tree.  Records are kept
+ *  in the order commits were made, so parents always precede their
+ *  children, and each new commit appends one record.  The file is
+ *  memory-mapped, so walking history or finding a split point reads
+ *  integers instead of deserializing Commits.  Commits are found by
+ *  SHA-1 through a lookup file beside the graph: a fan-out table and
+ *  the SHA-1s of the first records, sorted, each with its record
+ *  number, like an IdIndex.  Records appended since it was written are
+ *  scanned, and it is rewritten once there are more than LOOKUP_LIMIT
+ *  of them, so finding a commit takes O(log n) time.  The graph can
+ *  always be rebuilt from the Commit store, and is whenever it is
+ *  missing, out of date or of an older format; the lookup file names
+ *  the SHA-1 of the last record it covers, and is ignored if the
+ *  graph's record there has another.
+ *  @author Akshay Patel */
+class CommitGraph {
+
+    /** The commit graph file. */
+    static final File GRAPH_FILE =
+        Utils.join(Main.GITLET_FOLDER, "commit-graph");
+
+    /** First bytes of a commit graph file. */
+    static final int MAGIC = 0x47434752;
+
+    /** First bytes of a lookup file. */
+    static final int LOOKUP_MAGIC = 0x47434c4b;
+
+    /** Largest number of records appended since the lookup file was
+     *  written before it is rewritten. */
+    static final int LOOKUP_LIMIT = 1 << 10;
+
+    /** Ending of the name of the lookup file of a graph. */
+    static final String LOOKUP_SUFFIX = "-lookup";
+
+    /** Version of the commit graph format. */
+    static final int VERSION = 1;
+
+    /** Length of the header. */
+    private static final int HEADER = 8;
+
+    /** Offset of the first parent within a record. */
+    private static final int PARENT = Pack.ID_BYTES;
+
+    /** Offset of the second parent within a record. */
+    private static final int SECOND_PARENT = PARENT + 4;
+
+    /** Offset of the time within a record. */
+    private static final int TIME = SECOND_PARENT + 4;
+
+    /** Offset of the generation number within a record. */
+    private static final int GENERATION = TIME + 8;
+
+    /** Offset of the tree SHA-1 within a record. */
+    private static final int TREE = GENERATION + 4;
+
+    /** Width of a record. */
+    static final int RECORD = TREE + Pack.ID_BYTES;
+
+    /** Record number standing for no commit. */
+    static final int NONE = -1;
+
+    /** Position of the fan-out table in a lookup file, after its magic
+     *  number, the number of records it covers and the SHA-1 of the last
+     *  of them. */
+    private static final int FAN_OUT = 8 + Pack.ID_BYTES;
+
+    /** Position of the first entry in a lookup file. */
+    private static final int ENTRIES = FAN_OUT + 256 * 4;
+
+    /** Width of an entry of a lookup file: a SHA-1 and a record
+     *  number. */
+    private static final int ENTRY = Pack.ID_BYTES + 4;
+
+    /** The mapped graph file. */
+    private final MappedByteBuffer _records;
+
+    /** Number of records. */
+    private final int _size;
+
+    /** The mapped lookup file, or null if it is missing or does not
+     *  match the graph. */
+    private final MappedByteBuffer _lookup;
+
+    /** Number of records covered by _lookup. */
+    private final int _covered;
+
+    /** The graph in FILE, which must be well-formed, with its lookup
+     *  file if that matches it. */
+    private CommitGraph(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            _records = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            _size = (int) ((channel.size() - HEADER) / RECORD);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        MappedByteBuffer lookup = map(lookupFile(file));
+        if (lookup != null && !matches(lookup)) {
+            lookup = null;
+        }
+        _lookup = lookup;
+        _covered = lookup == null ? 0 : lookup.getInt(4);
+    }
+
+    /** Returns the graph in FILE, which must be well-formed, first
+     *  rewriting its lookup file if too many records are not in it and
+     *  the current command may change the repository. */
+    private static CommitGraph open(File file) {
+        CommitGraph graph = new CommitGraph(file);
+        if (graph._size - graph._covered > LOOKUP_LIMIT
+                && RepositoryLock.holdsExclusive(file)) {
+            graph.writeLookup(lookupFile(file));
+            graph = new CommitGraph(file);
+        }
+        return graph;
+    }
+
+    /** Returns the lookup file of the graph in FILE. */
+    private static File lookupFile(File file) {
+        return new File(file.getPath() + LOOKUP_SUFFIX);
+    }
+
+    /** Returns FILE mapped for reading, or null if it is missing. */
+    private static MappedByteBuffer map(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff LOOKUP is a well-formed lookup file for this
+     *  graph. */
+    private boolean matches(ByteBuffer lookup) {
+        if (lookup.limit() < ENTRIES || lookup.getInt(0) != LOOKUP_MAGIC) {
+            return false;
+        }
+        int covered = lookup.getInt(4);
+        return covered >= 0 && covered <= _size
+            && lookup.limit() == ENTRIES + (long) covered * ENTRY
+            && lookup.getInt(FAN_OUT + 255 * 4) == covered
+            && (covered == 0 || ObjectId.fromBuffer(lookup, 8)
+                .matches(_records, offset(covered - 1)));
+    }
+
+    /** Writes a lookup file covering every record of this graph to
+     *  FILE, replacing it by renaming. */
+    private void writeLookup(File file) {
+        long start = Trace.start();
+        Integer[] order = new Integer[_size];
+        ObjectId[] ids = new ObjectId[_size];
+        for (int i = 0; i < _size; i += 1) {
+            order[i] = i;
+            ids[i] = ObjectId.fromBuffer(_records, offset(i));
+        }
+        Arrays.sort(order, Comparator.comparing(i -> ids[i]));
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRIES + _size * ENTRY);
+        buffer.putInt(LOOKUP_MAGIC).putInt(_size);
+        (_size == 0 ? ObjectId.ZERO : ids[_size - 1]).put(buffer);
+        int[] fanOut = new int[256];
+        for (ObjectId id : ids) {
+            fanOut[id.firstByte()] += 1;
+        }
+        int total = 0;
+        for (int count : fanOut) {
+            total += count;
+            buffer.putInt(total);
+        }
+        for (int i : order) {
+            ids[i].put(buffer);
+            buffer.putInt(i);
+        }
+        File temp = Utils.tempFile(file);
+        write(temp, buffer, StandardOpenOption.TRUNCATE_EXISTING);
+        Utils.replace(temp, file);
+        Trace.end("CommitGraph.writeLookup", start, _size);
+    }
+
+    /** Returns the commit graph, rebuilding it first if it is missing or
+     *  of another format. */
+    static CommitGraph read() {
+        if (!isValid(GRAPH_FILE)) {
+            rebuild();
+        }
+        return open(GRAPH_FILE);
+    }
+
+    /** Returns the commit graph, rebuilding it first if it is missing,
+     *  of another format, or does not include all of the commits IDS. */
+    static CommitGraph readWith(String... ids) {
+        CommitGraph graph = read();
+        for (String id : ids) {
+            if (graph.indexOf(id) == NONE) {
+                rebuild();
+                return open(GRAPH_FILE);
+            }
+        }
+        return graph;
+    }
+
+    /** Returns true iff FILE exists and has the current format. */
+    private static boolean isValid(File file) {
+        if (!file.isFile() || (file.length() - HEADER) % RECORD != 0) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            channel.read(header, 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        header.flip();
+        return header.remaining() == HEADER && header.getInt() == MAGIC
+            && header.getInt() == VERSION;
+    }
+
+    /** Adds a record for COMMIT, whose parents must already be in the
+     *  graph; otherwise the graph is rebuilt from the Commit store. */
+    static void append(Commit commit) {
+        if (!append(GRAPH_FILE, commit)) {
+            rebuild();
+        }
+    }
+
+    /** Adds a record for COMMIT, whose parents must already be in it, to
+     *  the commit graph of the other repository whose .gitlet folder is
+     *  FOLDER; otherwise deletes that graph, which the other repository
+     *  rebuilds from its own Commit store when it next needs it. */
+    static void appendTo(File folder, Commit commit) {
+        File file = new File(folder, GRAPH_FILE.getName());
+        if (!append(file, commit)) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Adds a record for COMMIT to the graph in FILE, unless it is
+     *  there already.  Returns false, changing nothing, if FILE is
+     *  missing or of another format or lacks a parent of COMMIT. */
+    private static boolean append(File file, Commit commit) {
+        if (!isValid(file)) {
+            return false;
+        }
+        CommitGraph graph = open(file);
+        if (graph.indexOf(commit.getCodeName()) != NONE) {
+            return true;
+        }
+        int parent = graph.indexOf(commit.getParentCode());
+        int second = graph.indexOf(commit.getSecondParentCode());
+        if (parent == NONE && commit.getParentCode() != null
+            || second == NONE && commit.getSecondParentCode() != null) {
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        putRecord(record, commit, parent, second);
+        write(file, record, StandardOpenOption.APPEND);
+        return true;
+    }
+
+    /** Rewrites the graph from every commit in the Commit store, and
+     *  replaces the graph file by renaming, so that commands reading it
+     *  meanwhile keep the old one. */
+    static void rebuild() {
+        long start = Trace.start();
+        List<Commit> commits = new ArrayList<>();
+        for (String id : Commit.COMMIT_STORE.list()) {
+            commits.add(Commit.fromFile(id));
+        }
+        commits.sort(Comparator.comparingInt(Commit::getGeneration)
+                .thenComparing(Commit::getCodeName));
+        ObjectIdMap<Integer> numbers = new ObjectIdMap<>(commits.size());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER
+                + commits.size() * RECORD);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        for (Commit commit : commits) {
+            numbers.put(ObjectId.fromHex(commit.getCodeName()),
+                    numbers.size());
+            putRecord(buffer, commit,
+                    numberOf(numbers, commit.getParentCode()),
+                    numberOf(numbers, commit.getSecondParentCode()));
+        }
+        File temp = Utils.tempFile(GRAPH_FILE);
+        write(temp, buffer, StandardOpenOption.TRUNCATE_EXISTING);
+        lookupFile(GRAPH_FILE).delete();
+        Utils.replace(temp, GRAPH_FILE);
+        Trace.end("CommitGraph.rebuild", start, buffer.limit());
+    }
+
+    /** Returns the record number of commit ID in NUMBERS, or NONE if ID
+     *  is null or not there. */
+    private static int numberOf(ObjectIdMap<Integer> numbers, String id) {
+        Integer number = id == null ? null
+            : numbers.get(ObjectId.fromHex(id));
+        return number == null ? NONE : number;
+    }
+
+    /** Puts a record for COMMIT, with parents numbered PARENT and SECOND,
+     *  into BUFFER. */
+    private static void putRecord(ByteBuffer buffer, Commit commit,
+                                  int parent, int second) {
+        buffer.put(Utils.fromHex(commit.getCodeName()));
+        buffer.putInt(parent);
+        buffer.putInt(second);
+        buffer.putLong(commit.getTimestamp());
+        buffer.putInt(commit.getGeneration());
+        buffer.put(Utils.fromHex(commit.getTreeCode()));
+    }
+
+    /** Writes the contents of BUFFER to FILE, opened with MODE. */
+    private static void write(File file, ByteBuffer buffer,
+                              StandardOpenOption mode) {
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.written(file);
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the record number of commit ID, or NONE if ID is null or
+     *  not in the graph.  The records the lookup file does not cover are
+     *  scanned, most recent first, and the rest binary-searched. */
+    int indexOf(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return NONE;
+        }
+        ObjectId key = ObjectId.fromHex(id);
+        for (int i = _size - 1; i >= _covered; i -= 1) {
+            if (key.matches(_records, offset(i))) {
+                return i;
+            }
+        }
+        if (_lookup == null) {
+            return NONE;
+        }
+        int first = key.firstByte();
+        int lo = first == 0 ? 0 : _lookup.getInt(FAN_OUT + (first - 1) * 4);
+        int hi = _lookup.getInt(FAN_OUT + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo(_lookup, ENTRIES + mid * ENTRY);
+            if (cmp == 0) {
+                return _lookup.getInt(ENTRIES + mid * ENTRY + Pack.ID_BYTES);
+            } else if (cmp > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the SHA-1 of commit I. */
+    String id(int i) {
+        byte[] id = new byte[Pack.ID_BYTES];
+        _records.get(offset(i), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the record number of the parent of commit I, or NONE. */
+    int parent(int i) {
+        return _records.getInt(offset(i) + PARENT);
+    }
+
+    /** Returns the record number of the second parent of commit I, or
+     *  NONE. */
+    int secondParent(int i) {
+        return _records.getInt(offset(i) + SECOND_PARENT);
+    }
+
+    /** Returns the time of commit I, in seconds since the epoch. */
+    long time(int i) {
+        return _records.getLong(offset(i) + TIME);
+    }
+
+    /** Returns the generation number of commit I. */
+    int generation(int i) {
+        return _records.getInt(offset(i) + GENERATION);
+    }
+
+    /** Returns the SHA-1 of the tree of commit I. */
+    String tree(int i) {
+        byte[] tree = new byte[Pack.ID_BYTES];
+        _records.get(offset(i) + TREE, tree);
+        return Utils.toHex(tree);
+    }
+
+    /** Returns the position of record I in the file. */
+    private static int offset(int i) {
+        return HEADER + i * RECORD;
+    }
+
+    /** Returns the record number of the latest common ancestor of
+     *  commits FIRST and SECOND.  Both histories are walked together,
+     *  always expanding the commit with the largest generation next,
+     *  and marking each commit with the sides it is reachable from.  A
+     *  commit reachable from both is a candidate, and everything below
+     *  it is marked stale; the walk ends once only stale commits remain,
+     *  so only the part of the graph above the split point is visited.
+     *  When several candidates qualify, the one of highest generation
+     *  wins.  A commit's place in the queue depends only on its
+     *  generation, so one whose marks change while it waits there stays
+     *  where it is; a flag records which commits are queued. */
+    int splitPoint(int first, int second) {
+        final int fromFirst = 1, fromSecond = 2, stale = 4, queued = 8;
+        int[] flags = new int[_size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) ->
+            generation(a) != generation(b)
+            ? Integer.compare(generation(b), generation(a))
+            : Integer.compare(b, a));
+        flags[first] |= fromFirst | queued;
+        flags[second] |= fromSecond | queued;
+        queue.add(first);
+        if (first != second) {
+            queue.add(second);
+        }
+        int active = queue.size();
+        int best = NONE;
+        while (active > 0) {
+            int commit = queue.poll();
+            flags[commit] &= ~queued;
+            int mark = flags[commit];
+            if ((mark & stale) == 0) {
+                active -= 1;
+                if ((mark & (fromFirst | fromSecond))
+                        == (fromFirst | fromSecond)) {
+                    if (best == NONE) {
+                        best = commit;
+                    }
+                    mark |= stale;
+                }
+            }
+            for (int parent : new int[] {
+                    parent(commit), secondParent(commit) }) {
+                if (parent == NONE
+                        || (flags[parent] | mark) == flags[parent]) {
+                    continue;
+                }
+                int old = flags[parent];
+                flags[parent] |= mark;
+                if ((old & queued) == 0) {
+                    flags[parent] |= queued;
+                    queue.add(parent);
+                    if ((flags[parent] & stale) == 0) {
+                        active += 1;
+                    }
+                } else if ((old & stale) == 0
+                        && (flags[parent] & stale) != 0) {
+                    active -= 1;
+                }
+            }
+        }
+        return best;
+    }
+}
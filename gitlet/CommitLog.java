@@ -0,0 +1,514 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/** The commit log: an append-only file holding, for every commit in
+ *  the order it was made, its SHA-1, the SHA-1s of its parents, its time,
+ *  its date and its message, together with an inverted index from the
+ *  words of each message to the records of the commits that use them.
+ *  global-log reads the log from front to back, and find looks words up
+ *  in the index, so neither deserializes any Commit.  The index is a
+ *  hash table of BUCKETS chains of postings; each new commit appends
+ *  one posting per distinct word of its message and links it in at the
+ *  head of its chain.  Each record ends with a CRC-32 of the rest of
+ *  it, so that a record torn by a crash while it was appended is found
+ *  whenever the log runs past what the index covers.  Both files can
+ *  always be rebuilt from the Commit store, and are whenever they are
+ *  missing, of an older format, or torn, or do not agree with each
+ *  other.
+ *  @author Akshay Patel */
+class CommitLog implements Iterable<CommitLog.Entry> {
+
+    /** The commit log file. */
+    static final File LOG_FILE = Utils.join(Main.GITLET_FOLDER, "commit-log");
+
+    /** The message index file. */
+    static final File WORDS_FILE =
+        Utils.join(Main.GITLET_FOLDER, "message-index");
+
+    /** First bytes of a commit log file. */
+    static final int MAGIC = 0x474c4f47;
+
+    /** First bytes of a message index file. */
+    static final int WORDS_MAGIC = 0x4757524d;
+
+    /** Version of the commit log and message index formats. */
+    static final int VERSION = 2;
+
+    /** Length of the header of the commit log. */
+    private static final int HEADER = 8;
+
+    /** Number of chains in the message index; a power of two. */
+    private static final int BUCKETS = 1 << 12;
+
+    /** Offset in the message index of the length of the commit log that
+     *  it covers. */
+    private static final int COVERED = 8;
+
+    /** Offset in the message index of the head of the first chain. */
+    private static final int HEADS = COVERED + 8;
+
+    /** Length of the header of the message index. */
+    private static final int WORDS_HEADER = HEADS + 8 * BUCKETS;
+
+    /** Width of a posting: the hash of a word, the offset of a record in
+     *  the commit log, and the offset of the next posting of the chain,
+     *  or 0. */
+    private static final int POSTING = 4 + 8 + 8;
+
+    /** Separators of the words of a message. */
+    private static final Pattern SEPARATORS =
+        Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** The mapped commit log. */
+    private final MappedByteBuffer _log;
+
+    /** The mapped message index. */
+    private final MappedByteBuffer _words;
+
+    /** The commit log and message index in LOG_FILE and WORDS_FILE,
+     *  which must be well-formed. */
+    private CommitLog() {
+        _log = map(LOG_FILE);
+        _words = map(WORDS_FILE);
+    }
+
+    /** Returns the commit log, rebuilding it or its index first if
+     *  either is missing or out of date. */
+    static CommitLog read() {
+        long covered = covered(WORDS_FILE);
+        if (!isValid(LOG_FILE, MAGIC)
+                || covered != LOG_FILE.length()
+                   && !isWhole(LOG_FILE, covered)) {
+            rebuild();
+        } else if (covered != LOG_FILE.length()) {
+            rebuildWords(LOG_FILE, WORDS_FILE);
+        }
+        return new CommitLog();
+    }
+
+    /** Adds a record for COMMIT, which must not already be in the log,
+     *  and indexes the words of its message. */
+    static void append(Commit commit) {
+        if (!append(LOG_FILE, WORDS_FILE, commit)) {
+            rebuild();
+        }
+    }
+
+    /** Adds a record for COMMIT, which must not already be there, to the
+     *  commit log and message index of the other repository whose
+     *  .gitlet folder is FOLDER; otherwise deletes them, and the other
+     *  repository rebuilds them from its own commits when it next needs
+     *  them. */
+    static void appendTo(File folder, Commit commit) {
+        File log = new File(folder, LOG_FILE.getName());
+        File words = new File(folder, WORDS_FILE.getName());
+        if (!append(log, words, commit)) {
+            try {
+                Files.deleteIfExists(log.toPath());
+                Files.deleteIfExists(words.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Adds a record for COMMIT to the commit log in LOG, and indexes the
+     *  words of its message in WORDS.  Returns false, changing nothing,
+     *  if LOG is missing, of another format or torn. */
+    private static boolean append(File log, File words, Commit commit) {
+        long covered = covered(words);
+        if (!isValid(log, MAGIC)
+                || covered != log.length() && !isWhole(log, covered)) {
+            return false;
+        }
+        Journal.written(log);
+        Journal.written(words);
+        long at = log.length();
+        ByteBuffer record = record(commit);
+        long end = at + record.remaining();
+        write(log, record, at);
+        if (covered(words) != at) {
+            rebuildWords(log, words);
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(words.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long posting = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            for (String word : words(commit.getMessage())) {
+                int hash = word.hashCode();
+                long head = HEADS + 8L * (hash & (BUCKETS - 1));
+                buffer.clear();
+                channel.read(buffer, head);
+                buffer.flip();
+                ByteBuffer entry = ByteBuffer.allocate(POSTING);
+                entry.putInt(hash).putLong(at).putLong(buffer.getLong());
+                entry.flip();
+                channel.write(entry, posting);
+                buffer.clear();
+                buffer.putLong(posting).flip();
+                channel.write(buffer, head);
+                posting += POSTING;
+            }
+            buffer.clear();
+            buffer.putLong(end).flip();
+            channel.write(buffer, COVERED);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Rewrites the commit log from every commit in the commit graph,
+     *  in the graph's order, and then its index.  Each file is replaced
+     *  by renaming, so that commands reading it meanwhile keep the old
+     *  one. */
+    static void rebuild() {
+        long start = Trace.start();
+        CommitGraph graph = CommitGraph.read();
+        File temp = Utils.tempFile(LOG_FILE);
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+            for (int i = 0; i < graph.size(); i += 1) {
+                writeFully(channel, record(Commit.fromFile(graph.id(i))));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.replace(temp, LOG_FILE);
+        rebuildWords(LOG_FILE, WORDS_FILE);
+        Trace.end("CommitLog.rebuild", start, LOG_FILE.length());
+    }
+
+    /** Rewrites the message index in WORDS from the commit log in
+     *  LOGFILE. */
+    private static void rebuildWords(File logFile, File words) {
+        MappedByteBuffer log = map(logFile);
+        long[] heads = new long[BUCKETS];
+        List<long[]> postings = new ArrayList<>();
+        for (int at = HEADER; at < log.limit(); at = next(log, at)) {
+            for (String word : words(new Entry(log, at).getMessage())) {
+                int hash = word.hashCode();
+                int bucket = hash & (BUCKETS - 1);
+                postings.add(new long[] { hash, at, heads[bucket] });
+                heads[bucket] =
+                    WORDS_HEADER + (long) (postings.size() - 1) * POSTING;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(WORDS_HEADER
+                + postings.size() * POSTING);
+        buffer.putInt(WORDS_MAGIC).putInt(VERSION).putLong(log.limit());
+        for (long head : heads) {
+            buffer.putLong(head);
+        }
+        for (long[] posting : postings) {
+            buffer.putInt((int) posting[0]).putLong(posting[1])
+                .putLong(posting[2]);
+        }
+        buffer.flip();
+        File temp = Utils.tempFile(words);
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, buffer);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.replace(temp, words);
+    }
+
+    /** Returns the commits whose messages contain every word of TEXT,
+     *  ignoring case, in the order they were made.  Returns no commits
+     *  if TEXT has no words. */
+    List<Entry> withWords(String text) {
+        List<String> words = words(text);
+        TreeSet<Long> found = null;
+        for (String word : words) {
+            TreeSet<Long> records = postings(word);
+            if (found == null) {
+                found = records;
+            } else {
+                found.retainAll(records);
+            }
+        }
+        List<Entry> result = new ArrayList<>();
+        if (found == null) {
+            return result;
+        }
+        for (long at : found) {
+            Entry entry = new Entry(_log, (int) at);
+            if (words(entry.getMessage()).containsAll(words)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the offsets of the records whose messages may contain
+     *  WORD, which must already be in lower case. */
+    private TreeSet<Long> postings(String word) {
+        TreeSet<Long> result = new TreeSet<>();
+        int hash = word.hashCode();
+        long posting = _words.getLong(HEADS + 8 * (hash & (BUCKETS - 1)));
+        while (posting != 0) {
+            if (_words.getInt((int) posting) == hash) {
+                result.add(_words.getLong((int) posting + 4));
+            }
+            posting = _words.getLong((int) posting + 4 + 8);
+        }
+        return result;
+    }
+
+    /** Returns the commits of the log, in the order they were made. */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int _at = HEADER;
+
+            @Override
+            public boolean hasNext() {
+                return _at < _log.limit();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = new Entry(_log, _at);
+                _at = CommitLog.next(_log, _at);
+                return entry;
+            }
+        };
+    }
+
+    /** Returns the distinct words of TEXT, in lower case. */
+    static List<String> words(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String word : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns a record of COMMIT, ready to be written. */
+    private static ByteBuffer record(Commit commit) {
+        byte[] date = commit.getDate().getBytes(StandardCharsets.UTF_8);
+        byte[] message =
+            commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(3 * Pack.ID_BYTES + 8
+                + 2 + date.length + 4 + message.length + 4);
+        record.put(Utils.fromHex(commit.getCodeName()));
+        putId(record, commit.getParentCode());
+        putId(record, commit.getSecondParentCode());
+        record.putLong(commit.getTimestamp());
+        record.putShort((short) date.length).put(date);
+        record.putInt(message.length).put(message);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /** Puts the SHA-1 ID into RECORD, or zeros if ID is null. */
+    private static void putId(ByteBuffer record, String id) {
+        if (id == null) {
+            record.put(new byte[Pack.ID_BYTES]);
+        } else {
+            record.put(Utils.fromHex(id));
+        }
+    }
+
+    /** Returns the offset of the record after the one at AT in LOG. */
+    private static int next(ByteBuffer log, int at) {
+        int date = at + 3 * Pack.ID_BYTES + 8;
+        int message = date + 2 + (log.getShort(date) & 0xffff);
+        return message + 4 + log.getInt(message) + 4;
+    }
+
+    /** Returns true iff the commit log in FILE, which must be valid,
+     *  holds only whole records with matching checksums from FROM to its
+     *  end, or from its first record if FROM is not within it. */
+    private static boolean isWhole(File file, long from) {
+        MappedByteBuffer log = map(file);
+        long at = from < HEADER || from > log.limit() ? HEADER : from;
+        CRC32 crc = new CRC32();
+        while (at < log.limit()) {
+            long date = at + 3 * Pack.ID_BYTES + 8;
+            if (date + 2 > log.limit()) {
+                return false;
+            }
+            long message = date + 2 + (log.getShort((int) date) & 0xffff);
+            if (message + 4 > log.limit()) {
+                return false;
+            }
+            long end = message + 4 + (log.getInt((int) message) & 0xffffffffL);
+            if (end + 4 > log.limit()) {
+                return false;
+            }
+            ByteBuffer record = log.duplicate();
+            record.position((int) at).limit((int) end);
+            crc.reset();
+            crc.update(record);
+            if (log.getInt((int) end) != (int) crc.getValue()) {
+                return false;
+            }
+            at = end + 4;
+        }
+        return true;
+    }
+
+    /** Returns the length of the commit log covered by the message
+     *  index in WORDS, or -1 if it is missing or of another format. */
+    private static long covered(File words) {
+        if (!isValid(words, WORDS_MAGIC)
+                || words.length() < WORDS_HEADER) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(words.toPath())) {
+            channel.read(buffer, COVERED);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    /** Returns true iff FILE exists and starts with MAGIC and the current
+     *  VERSION. */
+    private static boolean isValid(File file, int magic) {
+        if (!file.isFile()) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            channel.read(header, 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        header.flip();
+        return header.remaining() == HEADER && header.getInt() == magic
+            && header.getInt() == VERSION;
+    }
+
+    /** Returns FILE, mapped for reading. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of BUFFER to FILE at position AT. */
+    private static void write(File file, ByteBuffer buffer, long at) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.position(at);
+            writeFully(channel, buffer);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes all of BUFFER to CHANNEL. */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** One commit in the log. */
+    static class Entry {
+
+        /** SHA-1 of the commit. */
+        private final String _codeName;
+
+        /** SHA-1 of its parent, or null. */
+        private final String _parentCode;
+
+        /** SHA-1 of its second parent, or null. */
+        private final String _secondParentCode;
+
+        /** Date of the commit, as printed by the log. */
+        private final String _date;
+
+        /** Message of the commit. */
+        private final String _message;
+
+        /** The commit whose record is at AT in LOG. */
+        Entry(ByteBuffer log, int at) {
+            ByteBuffer record = log.duplicate();
+            record.position(at);
+            _codeName = getId(record);
+            _parentCode = getId(record);
+            _secondParentCode = getId(record);
+            record.getLong();
+            _date = getString(record, record.getShort() & 0xffff);
+            _message = getString(record, record.getInt());
+        }
+
+        /** Returns the SHA-1 of the commit. */
+        String getCodeName() {
+            return _codeName;
+        }
+
+        /** Returns the message of the commit. */
+        String getMessage() {
+            return _message;
+        }
+
+        /** Returns the entry of the commit in the log. */
+        String getLog() {
+            return Commit.log(_codeName, _parentCode, _secondParentCode,
+                    _date, _message);
+        }
+
+        /** Returns the SHA-1 at the position of RECORD, or null if it is
+         *  all zeros, and advances past it. */
+        private static String getId(ByteBuffer record) {
+            byte[] id = new byte[Pack.ID_BYTES];
+            record.get(id);
+            for (byte b : id) {
+                if (b != 0) {
+                    return Utils.toHex(id);
+                }
+            }
+            return null;
+        }
+
+        /** Returns the LENGTH bytes of UTF-8 at the position of RECORD,
+         *  and advances past them. */
+        private static String getString(ByteBuffer record, int length) {
+            byte[] bytes = new byte[length];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
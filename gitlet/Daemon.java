@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** A long-running gitlet process that serves the repository in the
+ *  working directory over a Unix domain socket, so that commands sent
+ *  by Client skip JVM startup and find the index, packs and recently
+ *  used objects already in memory.  Each of those caches checks the
+ *  files it was read from before it is used, so commands run directly
+ *  by Main alongside the daemon are seen.  Requests are served one at
+ *  a time, each with standard output sent to its client.
+ *  @author Akshay Patel */
+class Daemon {
+
+    /** Largest number of arguments a request may have. */
+    private static final int MAX_ARGS = 1 << 16;
+
+    /** Serves commands until told to stop.  Throws a GitletException if
+     *  a daemon is already running. */
+    static void serve() throws IOException {
+        SocketChannel running = Client.connect();
+        if (running != null) {
+            running.close();
+            throw new GitletException("A daemon is already running.");
+        }
+        Files.deleteIfExists(Client.SOCKET_FILE.toPath());
+        PrintStream stdout = System.out;
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(
+                    Client.SOCKET_FILE.toPath()));
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = readRequest(
+                            Channels.newInputStream(client));
+                    PrintStream reply = new PrintStream(
+                        new BufferedOutputStream(
+                            Channels.newOutputStream(client),
+                            ObjectStore.BUFFER_SIZE),
+                        false, StandardCharsets.UTF_8);
+                    System.setOut(reply);
+                    stop = handle(args);
+                    reply.flush();
+                } catch (IOException excp) {
+                    continue;
+                } finally {
+                    System.setOut(stdout);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(Client.SOCKET_FILE.toPath());
+        }
+    }
+
+    /** Asks the running daemon to stop.  Throws a GitletException if
+     *  none is running. */
+    static void stop() throws IOException {
+        SocketChannel channel = Client.connect();
+        if (channel == null) {
+            throw new GitletException("No daemon is running.");
+        }
+        try (channel) {
+            Channels.newOutputStream(channel).write(
+                    Client.request(new String[] {"daemon", "stop"}));
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+        }
+    }
+
+    /** Runs the command ARGS, printing its output or error message.
+     *  Returns true iff ARGS asks the daemon to stop. */
+    static boolean handle(String[] args) {
+        if (args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop")) {
+            System.out.println("Daemon stopped.");
+            return true;
+        }
+        if (args.length >= 1 && args[0].equals("daemon")) {
+            System.out.println("A daemon is already running.");
+            return false;
+        }
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (IOException | RuntimeException excp) {
+            System.out.println("Error: " + excp);
+        }
+        return false;
+    }
+
+    /** Returns the arguments of the request read from IN.  Throws an
+     *  IOException if the request is malformed. */
+    private static String[] readRequest(InputStream in) throws IOException {
+        InputStream request = new BufferedInputStream(in);
+        String count = readUntil(request, '\n');
+        int n;
+        try {
+            n = Integer.parseInt(count);
+        } catch (NumberFormatException excp) {
+            throw new IOException("Malformed request.");
+        }
+        if (n < 0 || n > MAX_ARGS) {
+            throw new IOException("Malformed request.");
+        }
+        String[] args = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            args[i] = readUntil(request, 0);
+        }
+        return args;
+    }
+
+    /** Returns the UTF-8 text read from IN up to, but not including, the
+     *  byte END.  Throws an IOException if IN ends first. */
+    private static String readUntil(InputStream in, int end)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int b = in.read(); b != end; b = in.read()) {
+            if (b == -1) {
+                throw new IOException("Truncated request.");
+            }
+            bytes.write(b);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
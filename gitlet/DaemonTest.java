@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commands a Daemon serves, one after another in the same
+ *  process, on a repository that other commands change between them.
+ *  @author Akshay Patel */
+public class DaemonTest {
+
+    /** Makes a new repository in Main.CWD. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.newRepository();
+    }
+
+    /** Returns what the daemon prints in reply to the request ARGS. */
+    static String handle(String... args) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            assertFalse(Daemon.handle(args));
+        } finally {
+            System.setOut(stdout);
+        }
+        return bytes.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    /** Returns the head of the current branch, as the daemon logs it. */
+    static String head() {
+        return handle("log").split("\n")[1].substring("commit ".length());
+    }
+
+    /** Requests see commits made between them by commands run directly
+     *  in the same process, whose state they share. */
+    @Test
+    public void directCommands() throws IOException {
+        CommandTest.write("f", "1\n");
+        assertEquals("", handle("add", "f"));
+        assertEquals("", handle("commit", "one"));
+        String one = head();
+        assertEquals(one, CommandTest.head());
+        CommandTest.commit("f", "2\n", "two");
+        String two = CommandTest.head();
+        assertEquals(two, head());
+        assertEquals("", handle("checkout", one, "--", "f"));
+        assertEquals("1\n", CommandTest.read("f"));
+        assertEquals("f (modified)", statusOf(
+                "Modifications Not Staged For Commit"));
+        assertEquals("", CommandTest.run("checkout", "--", "f"));
+        assertEquals("", statusOf("Modifications Not Staged For Commit"));
+        assertEquals("", handle("branch", "b"));
+        assertEquals("b\n*master", statusOf("Branches"));
+        assertEquals("", CommandTest.run("rm-branch", "b"));
+        assertEquals("*master", statusOf("Branches"));
+    }
+
+    /** A request that fails leaves no journaled change or lock behind to
+     *  be applied to, or block, the commands that follow it. */
+    @Test
+    public void failedRequests() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        String one = CommandTest.head();
+        assertEquals("A branch with that name does not exist.",
+                handle("merge", "none"));
+        assertEquals("A branch with that name already exists.",
+                handle("branch", "master"));
+        CommandTest.write("f", "2\n");
+        assertEquals("", CommandTest.run("add", "f"));
+        assertEquals("", CommandTest.run("commit", "two"));
+        assertEquals("No changes added to the commit.",
+                handle("commit", "three"));
+        assertNotEquals(one, head());
+        assertEquals(CommandTest.head(), head());
+        assertFalse(Journal.JOURNAL_FILE.exists());
+    }
+
+    /** Requests see the refs, index and objects written between them by
+     *  commands run in another process, rather than what they cached,
+     *  and can change refs that process changed. */
+    @Test
+    public void otherProcesses() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        String one = head();
+        CommandTest.write("g", "g\n");
+        assertEquals("", CommandTest.runElsewhere("add", "g"));
+        assertEquals("g", statusOf("Staged Files"));
+        assertEquals("", CommandTest.runElsewhere("commit", "two"));
+        String two = head();
+        assertNotEquals(one, two);
+        assertEquals("", statusOf("Staged Files"));
+        assertTrue(handle("log").contains("\ntwo\n"));
+        CommandTest.write("f", "3\n");
+        assertEquals("", handle("add", "f"));
+        assertEquals("", handle("commit", "three"));
+        assertEquals("", CommandTest.runElsewhere("reset", one));
+        assertEquals(one, head());
+        assertEquals("", statusOf("Untracked Files"));
+        assertFalse(Utils.join(Main.CWD, "g").exists());
+        assertEquals("", handle("branch", "b"));
+        assertEquals("b\n*master", CommandTest.section(
+                CommandTest.runElsewhere("status"), "Branches"));
+    }
+
+    /** Returns the section of the daemon's status under HEADING. */
+    private static String statusOf(String heading) {
+        return CommandTest.section(handle("status"), heading);
+    }
+
+    /** A request to stop the daemon is answered and reported, and any
+     *  other daemon command refused. */
+    @Test
+    public void daemonRequests() {
+        assertEquals("A daemon is already running.", handle("daemon"));
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            assertTrue(Daemon.handle(new String[] {"daemon", "stop"}));
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("Daemon stopped.",
+                bytes.toString(StandardCharsets.UTF_8).trim());
+    }
+}
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas in the style of rsync.  A base is cut into blocks of
+ *  BLOCK bytes that are indexed by a rolling hash, and a target is
+ *  scanned for runs that match some block.  The resulting delta is a
+ *  sequence of instructions that either copy a run of the base or
+ *  insert literal bytes, preceded by the lengths of the base and the
+ *  target.
+ *  @author Akshay Patel */
+class Delta {
+
+    /** Size of the blocks of a base that are indexed. */
+    static final int BLOCK = 16;
+
+    /** Instruction that inserts literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction that copies a run of the base. */
+    private static final int COPY = 1;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME raised to the power BLOCK - 1. */
+    private static final int PRIME_POWER;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        PRIME_POWER = power;
+    }
+
+    /** The base that deltas are computed against. */
+    private final byte[] _base;
+
+    /** Map from the hash of each block of the base to its offset. */
+    private final HashMap<Integer, Integer> _blocks = new HashMap<>();
+
+    /** Prepares to compute deltas against BASE. */
+    Delta(byte[] base) {
+        _base = base;
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            _blocks.putIfAbsent(hash(base, i), i);
+        }
+    }
+
+    /** Returns a delta that turns the base into TARGET. */
+    byte[] encode(byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, _base.length);
+        writeVarint(out, target.length);
+        int literal = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = _blocks.get(h);
+            if (at != null && matches(at, target, i)) {
+                int from = i, start = at;
+                while (from > literal && start > 0
+                       && _base[start - 1] == target[from - 1]) {
+                    from -= 1;
+                    start -= 1;
+                }
+                int end = i + BLOCK, baseEnd = at + BLOCK;
+                while (end < target.length && baseEnd < _base.length
+                       && _base[baseEnd] == target[end]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                insert(out, target, literal, from);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, end - from);
+                i = end;
+                literal = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & 0xff) * PRIME_POWER) * PRIME
+                        + (target[i + BLOCK] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE.  Throws a
+     *  GitletException if DELTA was not made against BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, start, result, n, length);
+                n += length;
+            } else {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, length);
+                pos[0] += length;
+                n += length;
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("Delta is truncated.");
+        }
+        return result;
+    }
+
+    /** Returns true iff the BLOCK bytes of the base at AT equal those of
+     *  TARGET at I. */
+    private boolean matches(int at, byte[] target, int i) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (_base[at + k] != target[i + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes of DATA at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + (data[start + k] & 0xff);
+        }
+        return h;
+    }
+
+    /** Writes to OUT an instruction inserting DATA[START .. END), if that
+     *  range is not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] data,
+                               int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(data, start, end - start);
+        }
+    }
+
+    /** Writes the non-negative VALUE to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Returns the varint in DATA at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]];
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
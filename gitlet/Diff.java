@@ -0,0 +1,409 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Line-by-line differences between two versions of each of a set of
+ *  files, printed as unified diffs.  Each version is a blob, a file in
+ *  the working directory, or nothing, and is read through a Lines
+ *  iterator, a buffer at a time, rather than as a whole.  The lines of
+ *  both versions are numbered as they are read, equal lines getting
+ *  equal numbers, and the two sequences of numbers are compared with
+ *  Myers's O(ND) algorithm in its linear-space form, which finds the
+ *  middle snake of a shortest edit script and recurses on either side
+ *  of it.  Lines common to the starts and ends of the versions are
+ *  stripped first, so that a small change to a large file costs little
+ *  more than reading it.
+ *  @author Akshay Patel */
+class Diff {
+
+    /** Code standing for the version of a file in the working directory,
+     *  which is read from the file. */
+    static final ObjectId WORKING = ObjectId.ZERO;
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Lines of both versions, by number. */
+    private final ArrayList<String> _texts = new ArrayList<>();
+
+    /** Numbers of the lines of both versions, by text. */
+    private final HashMap<String, Integer> _numbers = new HashMap<>();
+
+    /** Numbers of the lines of the old version. */
+    private int[] _a;
+
+    /** Numbers of the lines of the new version. */
+    private int[] _b;
+
+    /** Which lines of the old version are deleted. */
+    private boolean[] _deleted;
+
+    /** Which lines of the new version are inserted. */
+    private boolean[] _inserted;
+
+    /** True iff either version contains a NUL byte. */
+    private boolean _binary;
+
+    /** Returns the files whose codes differ between BEFORE and AFTER,
+     *  which map paths to codes, mapped to their old and new codes, null
+     *  where a file is absent.  Files with equal codes are skipped
+     *  without being read. */
+    static TreeMap<String, ObjectId[]> changes(
+            TreeMap<String, ObjectId> before,
+            TreeMap<String, ObjectId> after) {
+        TreeMap<String, ObjectId[]> result = new TreeMap<>();
+        TreeSet<String> paths = new TreeSet<>(before.keySet());
+        paths.addAll(after.keySet());
+        for (String path : paths) {
+            ObjectId old = before.get(path), now = after.get(path);
+            if (!Objects.equals(old, now)) {
+                result.put(path, new ObjectId[] {old, now});
+            }
+        }
+        return result;
+    }
+
+    /** Returns the unified diff of each file in CHANGES, which maps
+     *  paths to their old and new codes as changes returns them.  A code
+     *  is the SHA-1 of a blob, WORKING, or null for an absent file.
+     *  Files whose versions turn out to hold the same lines are left
+     *  out. */
+    static String format(TreeMap<String, ObjectId[]> changes) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, ObjectId[]> file : changes.entrySet()) {
+            ObjectId[] codes = file.getValue();
+            new Diff().formatFile(file.getKey(), codes[0], codes[1], out);
+        }
+        return out.toString();
+    }
+
+    /** Appends the diff of the versions OLD and NOW of file PATH to
+     *  OUT. */
+    private void formatFile(String path, ObjectId old, ObjectId now,
+                            StringBuilder out) {
+        long start = Trace.start();
+        _a = read(path, old);
+        _b = read(path, now);
+        _deleted = new boolean[_a.length];
+        _inserted = new boolean[_b.length];
+        StringBuilder header = new StringBuilder();
+        header.append("diff --git a/").append(path).append(" b/")
+            .append(path).append("\n");
+        if (old == null) {
+            header.append("new file\n");
+        } else if (now == null) {
+            header.append("deleted file\n");
+        }
+        if (_binary) {
+            out.append(header).append("Binary files ")
+                .append(old == null ? "/dev/null" : "a/" + path)
+                .append(" and ")
+                .append(now == null ? "/dev/null" : "b/" + path)
+                .append(" differ\n");
+        } else {
+            compare(0, _a.length, 0, _b.length);
+            ArrayList<int[]> edits = edits();
+            if (!edits.isEmpty() || old == null || now == null) {
+                out.append(header)
+                    .append(old == null ? "--- /dev/null\n"
+                            : "--- a/" + path + "\n")
+                    .append(now == null ? "+++ /dev/null\n"
+                            : "+++ b/" + path + "\n");
+                formatHunks(edits, out);
+            }
+        }
+        Trace.end("Diff.file", start);
+    }
+
+    /** Returns the numbers of the lines of version CODE of file PATH,
+     *  numbering new lines as they are read. */
+    private int[] read(String path, ObjectId code) {
+        if (code == null) {
+            return new int[0];
+        }
+        Lines lines = new Lines(code.equals(WORKING)
+                ? open(Utils.join(Main.CWD, path))
+                : Blob.BLOB_STORE.open(code.toHex(), Blob.TYPE));
+        int[] result = new int[16];
+        int size = 0;
+        try {
+            while (lines.hasNext()) {
+                String text = lines.next();
+                Integer number = _numbers.get(text);
+                if (number == null) {
+                    number = _texts.size();
+                    _texts.add(text);
+                    _numbers.put(text, number);
+                }
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, 2 * size);
+                }
+                result[size] = number;
+                size += 1;
+            }
+        } finally {
+            lines.close();
+        }
+        _binary |= lines.isBinary();
+        return Arrays.copyOf(result, size);
+    }
+
+    /** Returns a stream over the contents of FILE. */
+    private static InputStream open(File file) {
+        try {
+            return Files.newInputStream(file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Marks the lines deleted from _a[ALO .. AHI-1] and inserted into
+     *  _b[BLO .. BHI-1] by a shortest edit script between the two. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                _inserted[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                _deleted[i] = true;
+            }
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /** Returns the start and end, as {x0, y0, x1, y1}, of the middle
+     *  snake of a shortest edit script between _a[ALO .. AHI-1] and
+     *  _b[BLO .. BHI-1], which must both be non-empty and differ in
+     *  their first and last lines.  The script runs from the start to
+     *  (x0, y0), along the snake, and from (x1, y1) to the end, each
+     *  part at most half as long as the whole.  Searches forward from
+     *  the start and backward from the end, D edits at a time, until
+     *  the two searches overlap. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2, offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d
+                    && forward[offset + k - 1] < forward[offset + k + 1]
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                        && x + backward[offset + delta - k] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d
+                    && backward[offset + k - 1] < backward[offset + k + 1]
+                    ? backward[offset + k + 1]
+                    : backward[offset + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                        && x + forward[offset + delta - k] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns the runs of changed lines, as {start of the deleted
+     *  lines, end of the deleted lines, start of the inserted lines, end
+     *  of the inserted lines}, in order. */
+    private ArrayList<int[]> edits() {
+        ArrayList<int[]> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (i < _a.length && j < _b.length
+                    && !_deleted[i] && !_inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < _a.length && _deleted[i]) {
+                i += 1;
+            }
+            while (j < _b.length && _inserted[j]) {
+                j += 1;
+            }
+            result.add(new int[] {i0, i, j0, j});
+        }
+        return result;
+    }
+
+    /** Appends EDITS to OUT as hunks, each holding the edits within
+     *  2 * CONTEXT lines of one another and CONTEXT lines around them. */
+    private void formatHunks(ArrayList<int[]> edits, StringBuilder out) {
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size()
+                   && edits.get(last + 1)[0] - edits.get(last)[1]
+                   <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int[] head = edits.get(first), tail = edits.get(last);
+            int aStart = Math.max(0, head[0] - CONTEXT);
+            int bStart = head[2] - (head[0] - aStart);
+            int aEnd = Math.min(_a.length, tail[1] + CONTEXT);
+            int bEnd = tail[3] + (aEnd - tail[1]);
+            out.append("@@ -").append(range(aStart, aEnd - aStart))
+                .append(" +").append(range(bStart, bEnd - bStart))
+                .append(" @@\n");
+            int i = aStart;
+            for (int e = first; e <= last; e += 1) {
+                int[] edit = edits.get(e);
+                appendLines(' ', _a, i, edit[0], out);
+                appendLines('-', _a, edit[0], edit[1], out);
+                appendLines('+', _b, edit[2], edit[3], out);
+                i = edit[1];
+            }
+            appendLines(' ', _a, i, aEnd, out);
+            first = last + 1;
+        }
+    }
+
+    /** Returns the hunk-header form of the LENGTH lines from line
+     *  START, counting from 0. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /** Appends lines FROM .. TO-1 of LINES to OUT, each after
+     *  PREFIX. */
+    private void appendLines(char prefix, int[] lines, int from, int to,
+                             StringBuilder out) {
+        for (int i = from; i < to; i += 1) {
+            String text = _texts.get(lines[i]);
+            out.append(prefix).append(text);
+            if (!text.endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** The lines of a stream, each with its newline if it has one,
+     *  read a buffer at a time. */
+    static class Lines implements Iterator<String> {
+
+        /** The stream. */
+        private final InputStream _in;
+
+        /** The line being read. */
+        private final ByteArrayOutputStream _line =
+            new ByteArrayOutputStream();
+
+        /** The next line, or null if it has not been read. */
+        private String _next;
+
+        /** True iff the stream is used up. */
+        private boolean _done;
+
+        /** True iff a NUL byte has been read. */
+        private boolean _binary;
+
+        /** The lines of IN, which they close when they are used up. */
+        Lines(InputStream in) {
+            _in = new BufferedInputStream(in, ObjectStore.BUFFER_SIZE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (_next == null && !_done) {
+                try {
+                    int c;
+                    for (c = _in.read(); c != -1; c = _in.read()) {
+                        _line.write(c);
+                        _binary |= c == 0;
+                        if (c == '\n') {
+                            break;
+                        }
+                    }
+                    if (_line.size() > 0) {
+                        _next = _line.toString(StandardCharsets.UTF_8);
+                        _line.reset();
+                    }
+                    if (c == -1) {
+                        close();
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            return _next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = _next;
+            _next = null;
+            return result;
+        }
+
+        /** Returns true iff a NUL byte has been read. */
+        boolean isBinary() {
+            return _binary;
+        }
+
+        /** Closes the stream. */
+        void close() {
+            if (!_done) {
+                _done = true;
+                try {
+                    _in.close();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+    }
+}
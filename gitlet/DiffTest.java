@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the output of the diff command against known hunks.
+ *  @author Akshay Patel */
+public class DiffTest {
+
+    /** Makes a new repository in Main.CWD. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.newRepository();
+    }
+
+    /** Returns the lines FROM .. TO, one number per line, with LINE
+     *  replaced by REPLACEMENT. */
+    static String lines(int from, int to, int line, String replacement) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i <= to; i += 1) {
+            result.append(i == line ? replacement : Integer.toString(i))
+                .append("\n");
+        }
+        return result.toString();
+    }
+
+    /** A changed line is shown with three lines of context on either
+     *  side. */
+    @Test
+    public void oneChange() throws IOException {
+        CommandTest.commit("f", lines(1, 10, 0, null), "ten");
+        CommandTest.write("f", lines(1, 10, 5, "five"));
+        assertEquals("diff --git a/f b/f\n"
+                + "--- a/f\n"
+                + "+++ b/f\n"
+                + "@@ -2,7 +2,7 @@\n"
+                + " 2\n 3\n 4\n-5\n+five\n 6\n 7\n 8",
+                CommandTest.run("diff"));
+    }
+
+    /** Changes far apart get hunks of their own, clipped at the ends of
+     *  the file, and changes close together share one. */
+    @Test
+    public void separateHunks() throws IOException {
+        CommandTest.commit("f", lines(1, 20, 0, null), "twenty");
+        String changed = lines(1, 20, 2, "two").replace("\n18\n", "\n")
+            .replace("\n8\n", "\n8\neight\n");
+        CommandTest.write("f", changed);
+        assertEquals("diff --git a/f b/f\n"
+                + "--- a/f\n"
+                + "+++ b/f\n"
+                + "@@ -1,11 +1,12 @@\n"
+                + " 1\n-2\n+two\n 3\n 4\n 5\n 6\n 7\n 8\n+eight\n"
+                + " 9\n 10\n 11\n"
+                + "@@ -15,6 +16,5 @@\n"
+                + " 15\n 16\n 17\n-18\n 19\n 20",
+                CommandTest.run("diff"));
+    }
+
+    /** A missing final newline is marked, and new and deleted files are
+     *  compared with /dev/null, both when staged and between commits. */
+    @Test
+    public void endsOfFiles() throws IOException {
+        CommandTest.commit("f", "a\nb\n", "two lines");
+        CommandTest.write("f", "a\nb\nc");
+        assertEquals("diff --git a/f b/f\n"
+                + "--- a/f\n"
+                + "+++ b/f\n"
+                + "@@ -1,2 +1,3 @@\n"
+                + " a\n b\n+c\n\\ No newline at end of file",
+                CommandTest.run("diff"));
+        CommandTest.write("g", "x\n");
+        CommandTest.run("add", "g");
+        assertEquals("diff --git a/g b/g\n"
+                + "new file\n"
+                + "--- /dev/null\n"
+                + "+++ b/g\n"
+                + "@@ -0,0 +1 @@\n"
+                + "+x",
+                CommandTest.run("diff", "--cached"));
+        CommandTest.run("commit", "g");
+        String before = CommandTest.head();
+        CommandTest.run("rm", "g");
+        CommandTest.run("commit", "no g");
+        assertEquals("diff --git a/g b/g\n"
+                + "deleted file\n"
+                + "--- a/g\n"
+                + "+++ /dev/null\n"
+                + "@@ -1 +0,0 @@\n"
+                + "-x",
+                CommandTest.run("diff", before, CommandTest.head()));
+    }
+
+    /** Versions holding a NUL byte are reported as binary, and a file
+     *  changed back to what is staged shows nothing. */
+    @Test
+    public void binaryAndUnchanged() throws IOException {
+        CommandTest.commit("f", "text\n", "text");
+        CommandTest.write("f", "bin\0ary\n");
+        assertEquals("diff --git a/f b/f\n"
+                + "Binary files a/f and b/f differ",
+                CommandTest.run("diff"));
+        CommandTest.write("f", "text\n");
+        assertEquals("", CommandTest.run("diff"));
+    }
+}
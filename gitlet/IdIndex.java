@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/** A sorted index of the SHA-1s of every object in an ObjectStore, for
+ *  resolving abbreviated SHA-1s.  The index file holds a magic number,
+ *  a 256-entry fan-out table like a Pack index's, and the sorted SHA-1s
+ *  themselves, 20 bytes each; it is memory-mapped and binary-searched,
+ *  so resolving a prefix takes O(log n) time.  Objects stored since the
+ *  index was written are appended to a journal, which is read whole,
+ *  and which is merged into the index once it grows past JOURNAL_LIMIT
+ *  entries by a command holding the repository's exclusive lock, as a
+ *  reader merging it could race another and lose what it held.  The
+ *  index is replaced by renaming, so readers never see it half
+ *  written.  A SHA-1 is journaled before its object is written, so the
+ *  index never misses an object, though it may name one that a crash
+ *  kept from being written.  The journal is opened for each SHA-1
+ *  appended, since another process merging it deletes it, and a
+ *  channel kept open would go on appending to the deleted file.  A
+ *  missing or damaged index is rebuilt from the store by a command
+ *  holding the exclusive lock; any other command answers from the
+ *  store's list of SHA-1s and the journal instead, writing nothing.
+ *  @author Akshay Patel */
+class IdIndex {
+
+    /** First bytes of an index file. */
+    static final int MAGIC = 0x47494458;
+
+    /** Fewest hex digits an abbreviated SHA-1 may have. */
+    static final int MIN_PREFIX = 4;
+
+    /** Largest number of entries in the journal before it is merged. */
+    static final int JOURNAL_LIMIT = 1 << 12;
+
+    /** Position of the first SHA-1 in an index file. */
+    private static final int RECORDS_START = 4 + 256 * 4;
+
+    /** The index file. */
+    private final File _file;
+
+    /** The journal. */
+    private final File _journal;
+
+    /** Gives every SHA-1 in the store, to rebuild the index. */
+    private final Supplier<List<String>> _all;
+
+    /** The memory-mapped index, or null if it has not been read. */
+    private MappedByteBuffer _index;
+
+    /** Modification time of the index file when _index was mapped. */
+    private long _modified;
+
+    /** An index kept in FILE, with journal JOURNAL, of the store whose
+     *  SHA-1s ALL gives. */
+    IdIndex(File file, File journal, Supplier<List<String>> all) {
+        _file = file;
+        _journal = journal;
+        _all = all;
+    }
+
+    /** Returns true iff PREFIX is long enough, short enough and hex
+     *  enough to be resolved. */
+    static boolean isPrefix(String prefix) {
+        if (prefix.length() < MIN_PREFIX
+                || prefix.length() > Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records that object ID is about to be stored. */
+    synchronized void add(String id) {
+        ByteBuffer record = ByteBuffer.wrap(Utils.fromHex(id));
+        try (FileChannel appender = FileChannel.open(_journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                appender.write(record);
+            }
+            Journal.written(_journal);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA-1s in the index that start with PREFIX, which
+     *  must satisfy isPrefix, in order. */
+    synchronized List<String> resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        TreeSet<String> result = new TreeSet<>();
+        if (!isCurrent()) {
+            if (!RepositoryLock.holdsExclusive(_file)) {
+                for (String id : _all.get()) {
+                    if (id.startsWith(prefix)) {
+                        result.add(id);
+                    }
+                }
+                addJournaled(prefix, result);
+                return new ArrayList<>(result);
+            }
+            List<ObjectId> all = new ArrayList<>();
+            for (String id : _all.get()) {
+                all.add(ObjectId.fromHex(id));
+            }
+            rebuild(all);
+        } else if (_journal.length() > (long) JOURNAL_LIMIT * Pack.ID_BYTES
+                   && RepositoryLock.holdsExclusive(_journal)) {
+            rebuild(ids());
+        }
+        ObjectId key = ObjectId.fromHex(prefix + "0".repeat(
+                Utils.UID_LENGTH - prefix.length()));
+        int first = key.firstByte();
+        int lo = first == 0 ? 0 : _index.getInt(4 + (first - 1) * 4);
+        int hi = _index.getInt(4 + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareTo(_index, RECORDS_START + mid * Pack.ID_BYTES)
+                    > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int count = _index.getInt(4 + 255 * 4);
+        for (int i = lo; i < count; i += 1) {
+            String id = ObjectId.fromBuffer(_index,
+                    RECORDS_START + i * Pack.ID_BYTES).toHex();
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        addJournaled(prefix, result);
+        return new ArrayList<>(result);
+    }
+
+    /** Adds the SHA-1s in the journal that start with PREFIX to
+     *  RESULT. */
+    private void addJournaled(String prefix, TreeSet<String> result) {
+        for (ObjectId id : journal()) {
+            String hex = id.toHex();
+            if (hex.startsWith(prefix)) {
+                result.add(hex);
+            }
+        }
+    }
+
+    /** Returns true iff the index file is mapped and up to date, mapping
+     *  it again if it has changed.  Returns false if it is missing or
+     *  damaged. */
+    private boolean isCurrent() {
+        if (!_file.isFile()) {
+            return false;
+        }
+        if (_index != null && _file.lastModified() == _modified) {
+            return true;
+        }
+        _modified = _file.lastModified();
+        try (FileChannel channel = FileChannel.open(_file.toPath())) {
+            _index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.limit() < RECORDS_START || _index.getInt(0) != MAGIC
+                || _index.limit() != RECORDS_START + (long) Pack.ID_BYTES
+                        * _index.getInt(4 + 255 * 4)) {
+            _index = null;
+            return false;
+        }
+        return true;
+    }
+
+    /** Returns the SHA-1s in the index file, which must be current. */
+    private List<ObjectId> ids() {
+        int count = _index.getInt(4 + 255 * 4);
+        List<ObjectId> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            result.add(ObjectId.fromBuffer(_index,
+                    RECORDS_START + i * Pack.ID_BYTES));
+        }
+        return result;
+    }
+
+    /** Returns the SHA-1s in the journal. */
+    private List<ObjectId> journal() {
+        List<ObjectId> result = new ArrayList<>();
+        if (!_journal.isFile()) {
+            return result;
+        }
+        byte[] data = Utils.readContents(_journal);
+        for (int at = 0; at + Pack.ID_BYTES <= data.length;
+             at += Pack.ID_BYTES) {
+            result.add(ObjectId.fromBytes(data, at));
+        }
+        return result;
+    }
+
+    /** Rewrites the index to hold BASE and the SHA-1s in the journal,
+     *  and empties the journal. */
+    private void rebuild(List<ObjectId> base) {
+        long start = Trace.start();
+        List<ObjectId> journal = journal();
+        ObjectId[] ids = base.toArray(new ObjectId[base.size()
+                + journal.size()]);
+        for (int i = 0; i < journal.size(); i += 1) {
+            ids[base.size() + i] = journal.get(i);
+        }
+        Arrays.sort(ids);
+        int size = 0;
+        for (ObjectId id : ids) {
+            if (size == 0 || !id.equals(ids[size - 1])) {
+                ids[size] = id;
+                size += 1;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORDS_START
+                + size * Pack.ID_BYTES);
+        buffer.putInt(MAGIC);
+        int[] fanOut = new int[256];
+        for (int i = 0; i < size; i += 1) {
+            fanOut[ids[i].firstByte()] += 1;
+        }
+        int total = 0;
+        for (int count : fanOut) {
+            total += count;
+            buffer.putInt(total);
+        }
+        for (int i = 0; i < size; i += 1) {
+            ids[i].put(buffer);
+        }
+        buffer.flip();
+        File temp = Utils.tempFile(_file);
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.replace(temp, _file);
+        try {
+            Files.deleteIfExists(_journal.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _index = null;
+        if (!isCurrent()) {
+            throw Utils.error("Cannot read %s.", _file.getName());
+        }
+        Trace.end("IdIndex.rebuild", start, _file.length());
+    }
+}
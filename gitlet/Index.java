@@ -0,0 +1,331 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** The index, or staging area: a single binary file listing every
+ *  tracked file with the SHA-1 of the blob that the next commit will
+ *  record for it, and the size, modification time and inode that the
+ *  file had when that blob was recorded.  A file is staged if its blob
+ *  differs from the head commit's, and staged for removal if the head
+ *  commit tracks it but the index does not.  Files whose stat data
+ *  still match their entries are known to be unchanged without being
+ *  read.
+ *  @author Akshay Patel */
+class Index {
+
+    /** The index file. */
+    static final File INDEX_FILE = Utils.join(Main.GITLET_FOLDER, "index");
+
+    /** First bytes of an index file. */
+    static final int MAGIC = 0x474c4958;
+
+    /** Version of the index format. */
+    static final int VERSION = 1;
+
+    /** Entries of the index, by file name. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+
+    /** Modification time of the index file when it was read, in
+     *  nanoseconds, or 0 for a new index. */
+    private long _readTime;
+
+    /** True iff the entries have changed since the index was read. */
+    private boolean _changed;
+
+    /** The index as this process last read or wrote it, or null. */
+    private static Index _cache;
+
+    /** Stat data of INDEX_FILE when _cache was read or written. */
+    private static long[] _cacheStat;
+
+    /** Returns the index, or an empty one if none has been written.
+     *  The file is only parsed if it has changed since this process last
+     *  read or wrote it. */
+    static Index read() {
+        Index index = new Index();
+        if (!INDEX_FILE.isFile()) {
+            return index;
+        }
+        long[] stat = stat(INDEX_FILE);
+        synchronized (Index.class) {
+            if (_cache != null && Arrays.equals(stat, _cacheStat)) {
+                return _cache.copy();
+            }
+        }
+        long start = Trace.start();
+        MessageDigest md = Utils.sha1Digest();
+        try (DataInputStream in = new DataInputStream(new DigestInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        INDEX_FILE.toPath()), ObjectStore.BUFFER_SIZE), md))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt index file.");
+            }
+            index._readTime = stat[1];
+            int count = in.readInt();
+            byte[] code = new byte[Pack.ID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String name = in.readUTF();
+                in.readFully(code);
+                index._entries.put(name, new Entry(
+                        ObjectId.fromBytes(code, 0),
+                        in.readLong(), in.readLong(), in.readLong()));
+            }
+            byte[] expected = md.digest();
+            byte[] checksum = new byte[expected.length];
+            in.readFully(checksum);
+            if (!Arrays.equals(expected, checksum)) {
+                throw Utils.error("Corrupt index file.");
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("Index.read", start, stat[0]);
+        remember(index, stat);
+        return index;
+    }
+
+    /** Records INDEX as the contents of INDEX_FILE while its stat data
+     *  are STAT. */
+    private static synchronized void remember(Index index, long[] stat) {
+        _cache = index.copy();
+        _cache._readTime = stat[1];
+        _cacheStat = stat;
+    }
+
+    /** Returns a copy of this index that can be changed independently. */
+    private Index copy() {
+        Index result = new Index();
+        result._entries.putAll(_entries);
+        result._readTime = _readTime;
+        return result;
+    }
+
+    /** Returns an index that tracks exactly the files of COMMIT, taking
+     *  stat data from the files in the working directory, which must
+     *  already hold COMMIT's versions. */
+    static Index fromCommit(Commit commit) {
+        Index index = new Index();
+        for (Map.Entry<String, ObjectId> file
+                 : commit.getBlobMap().entrySet()) {
+            index.add(file.getKey(), file.getValue(),
+                    Utils.join(Main.CWD, file.getKey()));
+        }
+        return index;
+    }
+
+    /** Writes the stat data refreshed by isModified, but only if the
+     *  current command holds the repository's exclusive lock.  Commands
+     *  that hold it shared leave the index as it is, and so hash those
+     *  files again next time. */
+    void refresh() {
+        if (RepositoryLock.holdsExclusive(INDEX_FILE)) {
+            write();
+        }
+    }
+
+    /** Writes the index if it has changed or was not read from the
+     *  index file, replacing the old index file only once the new one is
+     *  complete, and only once the blobs it names are published. */
+    void write() {
+        if (!_changed && _readTime != 0 && INDEX_FILE.exists()) {
+            return;
+        }
+        long start = Trace.start();
+        File temp = Utils.tempFile(INDEX_FILE);
+        MessageDigest md = Utils.sha1Digest();
+        try (OutputStream file = new BufferedOutputStream(
+                Files.newOutputStream(temp.toPath()), ObjectStore.BUFFER_SIZE);
+             DataOutputStream out =
+                     new DataOutputStream(new DigestOutputStream(file, md))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> item : _entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.write(entry._code.toBytes());
+                out.writeLong(entry._size);
+                out.writeLong(entry._mtime);
+                out.writeLong(entry._inode);
+            }
+            out.flush();
+            file.write(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.flush();
+        Utils.replace(temp, INDEX_FILE);
+        Journal.written(INDEX_FILE);
+        _changed = false;
+        long[] stat = stat(INDEX_FILE);
+        Trace.end("Index.write", start, stat[0]);
+        remember(this, stat);
+    }
+
+    /** Returns true iff NAME is in the index. */
+    boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Returns the SHA-1 of the blob recorded for NAME, or null. */
+    ObjectId get(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : entry._code;
+    }
+
+    /** Records blob CODE for NAME, with the stat data of FILE.  FILE
+     *  should be stat'ed before it is read, so that a change made while
+     *  it is hashed shows up as a stat mismatch later. */
+    void add(String name, ObjectId code, File file) {
+        long[] stat = file.exists() ? stat(file) : new long[3];
+        _entries.put(name, new Entry(code, stat[0], stat[1], stat[2]));
+        _changed = true;
+    }
+
+    /** Records blob CODE for NAME with no stat data, so that its working
+     *  file is hashed when it is next compared. */
+    void add(String name, ObjectId code) {
+        _entries.put(name, new Entry(code, 0, 0, 0));
+        _changed = true;
+    }
+
+    /** Copies the entry for NAME, stat data included, from OTHER. */
+    void copy(Index other, String name) {
+        _entries.put(name, other._entries.get(name));
+        _changed = true;
+    }
+
+    /** Removes NAME from the index. */
+    void remove(String name) {
+        if (_entries.remove(name) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Returns the files in the index and their blobs, as they would be
+     *  recorded by a commit. */
+    TreeMap<String, ObjectId> getBlobMap() {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> item : _entries.entrySet()) {
+            result.put(item.getKey(), item.getValue()._code);
+        }
+        return result;
+    }
+
+    /** Returns the files staged for addition relative to HEAD, with
+     *  their blobs. */
+    TreeMap<String, ObjectId> staged(Commit head) {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> item : _entries.entrySet()) {
+            String name = item.getKey();
+            if (!item.getValue()._code.equals(head.getBlobMap().get(name))) {
+                result.put(name, item.getValue()._code);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the files of HEAD that are staged for removal. */
+    TreeMap<String, ObjectId> removed(Commit head) {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> item
+                 : head.getBlobMap().entrySet()) {
+            if (!_entries.containsKey(item.getKey())) {
+                result.put(item.getKey(), item.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff the working file FILE for entry NAME no longer
+     *  holds the blob recorded for it.  The file is only hashed if its
+     *  stat data differ from the entry's, or if it was modified so close
+     *  to when the index was written that a later change might not have
+     *  altered its modification time.  A file found unchanged by hashing
+     *  has its stat data refreshed. */
+    boolean isModified(String name, File file) {
+        Entry entry = _entries.get(name);
+        long[] stat = stat(file);
+        if (isUnchanged(name, stat)) {
+            return false;
+        }
+        if (!new Blob(file).getId().equals(entry._code)) {
+            return true;
+        }
+        _entries.put(name, new Entry(entry._code, stat[0], stat[1], stat[2]));
+        _changed = true;
+        return false;
+    }
+
+    /** Returns true iff a file with stat data STAT, as returned by stat,
+     *  is known to still hold the blob recorded for entry NAME without
+     *  reading it.  Does not change the index. */
+    boolean isUnchanged(String name, long[] stat) {
+        Entry entry = _entries.get(name);
+        return entry != null && entry.matches(stat)
+            && entry._mtime < _readTime;
+    }
+
+    /** Returns the size, modification time in nanoseconds and an inode
+     *  number for FILE. */
+    static long[] stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return new long[] {
+                attrs.size(),
+                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                key == null ? 0 : key.hashCode()
+            };
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** One file in the index. */
+    private static class Entry {
+
+        /** SHA-1 of the blob recorded for the file. */
+        private final ObjectId _code;
+
+        /** Size of the file. */
+        private final long _size;
+
+        /** Modification time of the file, in nanoseconds. */
+        private final long _mtime;
+
+        /** Inode number of the file. */
+        private final long _inode;
+
+        /** An entry for blob CODE from a file with stat data SIZE, MTIME
+         *  and INODE. */
+        Entry(ObjectId code, long size, long mtime, long inode) {
+            _code = code;
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+        }
+
+        /** Returns true iff STAT, as returned by Index.stat, matches the
+         *  stat data of this entry. */
+        boolean matches(long[] stat) {
+            return stat[0] == _size && stat[1] == _mtime && stat[2] == _inode;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** Makes each command's changes to the repository all-or-nothing,
+ *  without forcing each file to the disk as it is written.  New objects
+ *  go into a batch pack per ObjectStore, a temporary file that is
+ *  published by renaming it into the store's pack folder, and the refs
+ *  and HEAD a command changes are held here rather than written.  When
+ *  the command finishes, its batches are forced and published, the
+ *  files it changed in place are forced with the folders holding them,
+ *  and the new contents of its refs are written as a single checksummed
+ *  record to the journal file, which is forced too.  Only then are the
+ *  refs replaced, each by an atomic rename, and the journal deleted.
+ *  Each ref is replaced by compare-and-swap: the command claims it by
+ *  creating its lock file, which fails if another command holds it, and
+ *  checks that it still holds what the command first read, before the
+ *  record is written; the lock file then takes the new contents and is
+ *  renamed over the ref.  So refs that other commands may change at the
+ *  same time, such as a remote's, are never changed on stale reads.  A
+ *  command that fails, or a crash before its record is complete, leaves
+ *  every ref as it was, and the objects it wrote unreachable; a crash
+ *  after leaves a record that the next command replays.  Batches are
+ *  also published early, whenever a file that names objects, such as
+ *  the index or the commit graph, is about to change, so such files
+ *  never name objects that a crash could lose.
+ *  @author Akshay Patel */
+class Journal {
+
+    /** The journal file. */
+    static final File JOURNAL_FILE = Utils.join(Main.GITLET_FOLDER, "journal");
+
+    /** First bytes of a journal record. */
+    static final int MAGIC = 0x474a524e;
+
+    /** Ending of the name of the lock file of a ref. */
+    static final String LOCK_SUFFIX = ".lock";
+
+    /** New contents of the refs and other small files changed by the
+     *  current command, by file, or null for files it deletes. */
+    private static final TreeMap<File, String> UPDATES = new TreeMap<>();
+
+    /** Contents of the refs that the current command has read or
+     *  changed, by file, as it first found them, or null for files that
+     *  did not exist. */
+    private static final TreeMap<File, String> EXPECTED = new TreeMap<>();
+
+    /** Files changed in place by the current command, to be forced. */
+    private static final LinkedHashSet<File> WRITTEN =
+        new LinkedHashSet<>();
+
+    /** Stores holding a batch of the current command's objects. */
+    private static final LinkedHashSet<ObjectStore> BATCHES =
+        new LinkedHashSet<>();
+
+    /** Records that STORE holds a batch of unpublished objects. */
+    static synchronized void batch(ObjectStore store) {
+        BATCHES.add(store);
+    }
+
+    /** Records that FILE was changed in place, and so must be forced to
+     *  the disk before the command's refs change. */
+    static synchronized void written(File file) {
+        WRITTEN.add(file);
+    }
+
+    /** Sets the contents of FILE to CONTENTS, or deletes it if CONTENTS
+     *  is null, when the command finishes. */
+    static synchronized void update(File file, String contents) {
+        expect(file);
+        UPDATES.put(file, contents);
+    }
+
+    /** Returns the contents of FILE as the current command has left
+     *  them, or null if it does not exist. */
+    static synchronized String read(File file) {
+        if (UPDATES.containsKey(file)) {
+            return UPDATES.get(file);
+        }
+        return expect(file);
+    }
+
+    /** Returns the contents of FILE as the current command first found
+     *  them, or null if it did not exist, reading them if it has not. */
+    private static String expect(File file) {
+        if (!EXPECTED.containsKey(file)) {
+            EXPECTED.put(file,
+                    file.isFile() ? Utils.readContentsAsString(file) : null);
+        }
+        return EXPECTED.get(file);
+    }
+
+    /** Returns the files the current command has changed, mapped to
+     *  their new contents, or to null if deleted. */
+    static synchronized Map<File, String> updates() {
+        return Collections.unmodifiableMap(new TreeMap<>(UPDATES));
+    }
+
+    /** Forces the files changed in place so far to the disk, and then
+     *  the objects written so far, and publishes the objects.  The files
+     *  go first, so that the journal of an IdIndex never misses a
+     *  published object. */
+    static synchronized void flush() {
+        LinkedHashSet<File> folders = new LinkedHashSet<>();
+        for (File file : WRITTEN) {
+            if (file.exists()) {
+                force(file);
+                folders.add(file.getParentFile());
+            }
+        }
+        WRITTEN.clear();
+        for (ObjectStore store : BATCHES) {
+            store.publish();
+            folders.add(store.packFolder());
+            folders.add(store.getRoot());
+        }
+        BATCHES.clear();
+        for (File folder : folders) {
+            if (folder.isDirectory()) {
+                force(folder);
+            }
+        }
+    }
+
+    /** Finishes the current command: forces the files it changed and
+     *  publishes its objects, and then makes its changes to refs through
+     *  a journal record. */
+    static synchronized void commit() {
+        if (BATCHES.isEmpty() && WRITTEN.isEmpty() && UPDATES.isEmpty()) {
+            return;
+        }
+        long start = Trace.start();
+        int count = WRITTEN.size() + BATCHES.size() + UPDATES.size();
+        flush();
+        if (!UPDATES.isEmpty()) {
+            claim();
+            writeRecord();
+            apply(UPDATES);
+            UPDATES.clear();
+            EXPECTED.clear();
+            try {
+                Files.deleteIfExists(JOURNAL_FILE.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Trace.end("Journal.commit", start, count);
+    }
+
+    /** Discards whatever the current command has not committed. */
+    static synchronized void abort() {
+        for (ObjectStore store : BATCHES) {
+            store.discard();
+        }
+        BATCHES.clear();
+        WRITTEN.clear();
+        UPDATES.clear();
+        EXPECTED.clear();
+    }
+
+    /** Replays the record left in the journal by a command that was
+     *  interrupted while changing its refs, or discards it if it is
+     *  incomplete. */
+    static synchronized void recover() {
+        if (!JOURNAL_FILE.isFile()) {
+            return;
+        }
+        TreeMap<File, String> updates = readRecord();
+        if (updates != null) {
+            apply(updates);
+        }
+        try {
+            Files.deleteIfExists(JOURNAL_FILE.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Claims every file in UPDATES by creating its lock file, and
+     *  checks that each still holds what the current command expects.
+     *  A lock file in a repository whose exclusive lock this command
+     *  holds was left by an interrupted command, and is taken over.
+     *  Throws a GitletException, having released the lock files it
+     *  created, if a file is claimed by another command or has
+     *  changed, and before claiming any if a file could not be written,
+     *  so that no record is written that could not be replayed. */
+    private static void claim() {
+        for (File file : UPDATES.keySet()) {
+            if (!isWritable(file)) {
+                throw new GitletException("Cannot change "
+                        + file.getName() + "; something is in its way.");
+            }
+        }
+        ArrayList<File> claimed = new ArrayList<>();
+        try {
+            for (File file : UPDATES.keySet()) {
+                File lock = lockFile(file);
+                file.getParentFile().mkdirs();
+                try {
+                    Files.createFile(lock.toPath());
+                } catch (FileAlreadyExistsException excp) {
+                    if (!RepositoryLock.holdsExclusive(lock)) {
+                        throw new GitletException(
+                                "Another command is changing "
+                                + file.getName() + "; try again.");
+                    }
+                }
+                claimed.add(lock);
+                String now = file.isFile()
+                    ? Utils.readContentsAsString(file) : null;
+                if (!Objects.equals(now, EXPECTED.get(file))) {
+                    throw new GitletException("Another command changed "
+                            + file.getName() + "; try again.");
+                }
+            }
+        } catch (GitletException excp) {
+            release(claimed);
+            throw excp;
+        } catch (IOException excp) {
+            release(claimed);
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes the lock files LOCKS. */
+    private static void release(List<File> locks) {
+        for (File lock : locks) {
+            lock.delete();
+        }
+    }
+
+    /** Returns true iff FILE can be written or deleted as a ref: it is
+     *  not a folder, and the nearest of its folders that exists is a
+     *  folder rather than a file. */
+    static boolean isWritable(File file) {
+        if (file.isDirectory()) {
+            return false;
+        }
+        File folder = file.getAbsoluteFile().getParentFile();
+        while (folder != null && !folder.exists()) {
+            folder = folder.getParentFile();
+        }
+        return folder == null || folder.isDirectory();
+    }
+
+    /** Returns the lock file of FILE. */
+    static File lockFile(File file) {
+        return new File(file.getParentFile(), file.getName() + LOCK_SUFFIX);
+    }
+
+    /** Writes UPDATES to the journal file as one record, and forces it
+     *  to the disk.  Files are named relative to the .gitlet folder, so
+     *  that a record stays valid if the repository is moved. */
+    private static void writeRecord() {
+        Path base = root();
+        MessageDigest md = Utils.sha1Digest();
+        try (OutputStream file = new BufferedOutputStream(
+                Files.newOutputStream(JOURNAL_FILE.toPath()));
+             DataOutputStream out =
+                     new DataOutputStream(new DigestOutputStream(file, md))) {
+            out.writeInt(MAGIC);
+            out.writeInt(UPDATES.size());
+            for (Map.Entry<File, String> update : UPDATES.entrySet()) {
+                out.writeUTF(base.relativize(path(update.getKey()))
+                        .toString());
+                out.writeBoolean(update.getValue() != null);
+                if (update.getValue() != null) {
+                    out.writeUTF(update.getValue());
+                }
+            }
+            out.flush();
+            file.write(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        force(JOURNAL_FILE);
+    }
+
+    /** Returns the updates in the record in the journal file, or null if
+     *  the record is incomplete. */
+    private static TreeMap<File, String> readRecord() {
+        Path base = root();
+        MessageDigest md = Utils.sha1Digest();
+        TreeMap<File, String> result = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new DigestInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        JOURNAL_FILE.toPath())), md))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                File file = base.resolve(in.readUTF()).toFile();
+                result.put(file, in.readBoolean() ? in.readUTF() : null);
+            }
+            byte[] expected = md.digest();
+            byte[] checksum = new byte[expected.length];
+            in.readFully(checksum);
+            return Arrays.equals(expected, checksum) ? result : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Makes each change in UPDATES by writing its target's lock file
+     *  and renaming it into place, or by deleting the target and its lock
+     *  file, and then forces the folders changed.  A folder left empty by
+     *  deleting a remote's last branch is deleted too. */
+    private static void apply(Map<File, String> updates) {
+        LinkedHashSet<File> folders = new LinkedHashSet<>();
+        try {
+            for (Map.Entry<File, String> update : updates.entrySet()) {
+                File file = update.getKey();
+                File folder = file.getParentFile();
+                File lock = lockFile(file);
+                if (update.getValue() == null) {
+                    Files.deleteIfExists(file.toPath());
+                    Files.deleteIfExists(lock.toPath());
+                    if (Main.REFS_FOLDER.equals(folder.getParentFile())) {
+                        folder.delete();
+                    }
+                } else {
+                    folder.mkdirs();
+                    Utils.writeContents(lock, update.getValue());
+                    force(lock);
+                    Files.move(lock.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                folders.add(folder);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (File folder : folders) {
+            if (folder.isDirectory()) {
+                force(folder);
+            }
+        }
+    }
+
+    /** Returns the absolute, normalized path of the .gitlet folder. */
+    private static Path root() {
+        return path(Main.GITLET_FOLDER);
+    }
+
+    /** Returns the absolute, normalized path of FILE. */
+    private static Path path(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /** Forces the contents of FILE, which may be a folder, to the
+     *  disk.  Folders cannot be forced on some platforms; there, they
+     *  are left as they are. */
+    static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of recovery from commands interrupted while changing refs.
+ *  @author Akshay Patel */
+public class JournalTest {
+
+    /** The head of master before its last commit. */
+    private String _older;
+
+    /** The head of master. */
+    private String _newer;
+
+    /** Makes a new repository in Main.CWD whose master has two
+     *  commits. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.newRepository();
+        CommandTest.commit("f", "1\n", "one");
+        _older = CommandTest.head();
+        CommandTest.commit("f", "2\n", "two");
+        _newer = CommandTest.head();
+    }
+
+    /** Returns a journal record, as a command interrupted after writing
+     *  it would leave, that sets the ref named PATH within the .gitlet
+     *  folder to CONTENTS. */
+    static byte[] record(String path, String contents) throws IOException {
+        MessageDigest md = Utils.sha1Digest();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out =
+                 new DataOutputStream(new DigestOutputStream(bytes, md))) {
+            out.writeInt(Journal.MAGIC);
+            out.writeInt(1);
+            out.writeUTF(path);
+            out.writeBoolean(true);
+            out.writeUTF(contents);
+        }
+        bytes.write(md.digest());
+        return bytes.toByteArray();
+    }
+
+    /** A whole record is replayed by the next command, even one that
+     *  only reads, and then deleted, so that it is replayed once. */
+    @Test
+    public void replaysWholeRecord() throws IOException {
+        Utils.writeContents(Journal.JOURNAL_FILE,
+                record("refs/master", _older));
+        assertEquals(_older, CommandTest.head());
+        assertFalse(Journal.JOURNAL_FILE.exists());
+        assertEquals(_older, CommandTest.head());
+    }
+
+    /** A record torn by a crash while it was written, or whose checksum
+     *  does not match, is discarded, leaving every ref as it was. */
+    @Test
+    public void discardsTornRecord() throws IOException {
+        byte[] whole = record("refs/master", _older);
+        for (int length = 0; length < whole.length; length += 7) {
+            Utils.writeContents(Journal.JOURNAL_FILE,
+                    Arrays.copyOf(whole, length));
+            assertEquals(_newer, CommandTest.head());
+            assertFalse(Journal.JOURNAL_FILE.exists());
+        }
+        byte[] damaged = whole.clone();
+        damaged[damaged.length - 1] ^= 1;
+        Utils.writeContents(Journal.JOURNAL_FILE, damaged);
+        assertEquals(_newer, CommandTest.head());
+        assertFalse(Journal.JOURNAL_FILE.exists());
+    }
+
+    /** A lock file left on a ref by an interrupted command is taken over
+     *  by the next command that changes the ref. */
+    @Test
+    public void takesOverStaleLock() throws IOException {
+        File lock = Journal.lockFile(
+                Utils.join(Main.REFS_FOLDER, "master"));
+        Utils.writeContents(lock, "torn");
+        CommandTest.write("f", "3\n");
+        CommandTest.run("add", "f");
+        assertEquals("", CommandTest.run("commit", "three"));
+        assertNotEquals(_newer, CommandTest.head());
+        assertFalse(lock.exists());
+    }
+}
@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Converter of repositories written by the first version of gitlet.
+ *  That version kept each blob, commit and branch as a file written by
+ *  Java serialization, named by its SHA-1 or branch name, directly in
+ *  the blobs, commits and workingTrees folders, and kept its staging
+ *  area as copies of the files staged for addition and removal in two
+ *  folders of their own.  Each commit held its parent as an object, so
+ *  the file of a branch's head holds its whole history.  The classes
+ *  that wrote those files have since changed past what serialization
+ *  can read, so their records are read into the Record classes here,
+ *  which have the same fields, by a stream that substitutes them for
+ *  the classes named in the records.
+ *  @author Akshay Patel */
+class Legacy {
+
+    /** Folder of the first version's files staged for addition. */
+    static final File STAGING_AREA =
+        Utils.join(Main.GITLET_FOLDER, "stagingArea");
+
+    /** Folder of the first version's files staged for removal. */
+    static final File REMOVAL_AREA =
+        Utils.join(Main.GITLET_FOLDER, "removalArea");
+
+    /** The Record class read in place of each class the first version
+     *  serialized, by the name of that class. */
+    static final Map<String, Class<?>> RECORDS = Map.of(
+        "gitlet.Blob", BlobRecord.class,
+        "gitlet.Commit", CommitRecord.class,
+        "gitlet.WorkingTree", BranchRecord.class);
+
+    /** The record of a blob in the first version. */
+    static class BlobRecord implements Serializable {
+        /** SHA-1 of the blob's file name and contents. */
+        String _codeName;
+        /** Name of the file. */
+        String _fileName;
+        /** Contents of the file. */
+        byte[] _contents;
+    }
+
+    /** The record of a commit in the first version. */
+    static class CommitRecord implements Serializable {
+        /** Message of the commit. */
+        String _message;
+        /** SHA-1 of the commit. */
+        String _codeName;
+        /** Parent of the commit, or null for the initial commit. */
+        CommitRecord _parent;
+        /** Date of the commit, as the log printed it. */
+        String _date;
+        /** SHA-1 of the blob record of each file, by its name. */
+        TreeMap<String, String> _namesAndCodes;
+    }
+
+    /** The record of a branch in the first version. */
+    static class BranchRecord implements Serializable {
+        /** Name of the branch. */
+        String _name;
+        /** SHA-1 of the head of the branch. */
+        String _head;
+        /** Log of each commit on the branch, by its SHA-1. */
+        TreeMap<String, String> _commitsAndMessages;
+        /** Each commit on the branch, by an abbreviation of its SHA-1. */
+        TreeMap<String, String> _commitSixDigitAndFull;
+        /** The commits on the branch. */
+        ArrayList<String> _commits;
+        /** True iff this is the current branch. */
+        boolean _isCurrent;
+    }
+
+    /** Converts the branches recorded in the workingTrees folder that
+     *  have no ref, which the first version wrote, along with their
+     *  history, files and the staging area, and commits the new refs,
+     *  HEAD and index before deleting the first version's blobs, commits
+     *  and staging area.  Each commit is saved again in the current
+     *  format, with the same parent, date, message and files; its SHA-1
+     *  changes, since the first version's SHA-1s hashed different
+     *  contents.  The branch records themselves are left to the caller.
+     *  Returns the number of commits converted. */
+    static int convert() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        HashMap<String, ObjectId> blobs = new HashMap<>();
+        String current = null;
+        List<String> names = Utils.plainFilenamesIn(Main.WORKING_TREES);
+        if (names != null) {
+            for (String name : names) {
+                File ref = Utils.join(Main.REFS_FOLDER, name);
+                if (!WorkingTree.isBranchName(name)
+                        || Journal.read(ref) != null) {
+                    continue;
+                }
+                BranchRecord record = read(
+                        Utils.join(Main.WORKING_TREES, name),
+                        BranchRecord.class);
+                Main.REFS_FOLDER.mkdir();
+                WorkingTree branch = new WorkingTree(name);
+                branch.setHead(convert(record._head, commits, blobs)
+                        .getCodeName());
+                branch.saveWorkingTree();
+                if (record._isCurrent) {
+                    branch.makeCurrent();
+                    current = name;
+                }
+            }
+        }
+        if (current != null) {
+            writeIndex(WorkingTree.fromFile(current).getHeadCommit(),
+                    blobs);
+        }
+        Journal.commit();
+        deleteRecords(Blob.BLOB_FOLDER);
+        deleteRecords(Commit.COMMIT_FOLDER);
+        deleteRecords(STAGING_AREA);
+        deleteRecords(REMOVAL_AREA);
+        STAGING_AREA.delete();
+        REMOVAL_AREA.delete();
+        return commits.size();
+    }
+
+    /** Returns the commit converted from the first version's commit
+     *  CODE, converting it and those of its ancestors not yet in
+     *  COMMITS, which maps the SHA-1s of converted commits to their
+     *  conversions, and whose files' blobs are stored and kept in
+     *  BLOBS by the SHA-1s of their records. */
+    private static Commit convert(String code,
+                                  HashMap<String, Commit> commits,
+                                  HashMap<String, ObjectId> blobs) {
+        if (commits.containsKey(code)) {
+            return commits.get(code);
+        }
+        ArrayDeque<CommitRecord> records = new ArrayDeque<>();
+        CommitRecord record = read(Utils.join(Commit.COMMIT_FOLDER, code),
+                CommitRecord.class);
+        while (record != null && !commits.containsKey(record._codeName)) {
+            records.push(record);
+            record = record._parent;
+        }
+        Commit commit = null;
+        while (!records.isEmpty()) {
+            record = records.pop();
+            Commit parent = record._parent == null ? null
+                : commits.get(record._parent._codeName);
+            commit = new Commit(record._message, parent);
+            commit.setDate(record._date);
+            TreeMap<String, String> files = record._namesAndCodes;
+            TreeMap<String, ObjectId> old = parent == null
+                ? new TreeMap<>() : parent.getBlobMap();
+            for (String name : old.keySet()) {
+                if (!files.containsKey(name)) {
+                    commit.removeBlob(name);
+                }
+            }
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                ObjectId blob = blob(file.getValue(), blobs);
+                if (!blob.equals(old.get(file.getKey()))) {
+                    commit.addBlob(file.getKey(), blob);
+                }
+            }
+            commit.saveCommit();
+            commits.put(record._codeName, commit);
+        }
+        return commit;
+    }
+
+    /** Returns the SHA-1 of the blob holding the contents of the first
+     *  version's blob CODE, storing it if BLOBS, which maps the SHA-1s of
+     *  blob records to those of stored blobs, does not have it. */
+    private static ObjectId blob(String code,
+                                 HashMap<String, ObjectId> blobs) {
+        ObjectId result = blobs.get(code);
+        if (result == null) {
+            BlobRecord record = read(Utils.join(Blob.BLOB_FOLDER, code),
+                    BlobRecord.class);
+            result = ObjectId.fromHex(
+                    Blob.BLOB_STORE.put(Blob.TYPE, record._contents));
+            blobs.put(code, result);
+        }
+        return result;
+    }
+
+    /** Writes an index that tracks the files of HEAD, as changed by the
+     *  first version's staging area, storing the files staged for
+     *  addition.  No stat data are recorded, so that each working file
+     *  is hashed when it is next compared.  BLOBS is as for convert. */
+    private static void writeIndex(Commit head,
+                                   HashMap<String, ObjectId> blobs) {
+        Index index = Index.read();
+        for (Map.Entry<String, ObjectId> file
+                 : head.getBlobMap().entrySet()) {
+            index.add(file.getKey(), file.getValue());
+        }
+        List<String> staged = Utils.plainFilenamesIn(STAGING_AREA);
+        if (staged != null) {
+            for (String name : staged) {
+                index.add(name, ObjectId.fromHex(Blob.BLOB_STORE.put(
+                        Blob.TYPE, Utils.readContents(
+                                Utils.join(STAGING_AREA, name)))));
+            }
+        }
+        List<String> removed = Utils.plainFilenamesIn(REMOVAL_AREA);
+        if (removed != null) {
+            for (String name : removed) {
+                index.remove(name);
+            }
+        }
+        index.write();
+    }
+
+    /** Deletes the files directly in FOLDER that the first version
+     *  wrote: every file of a staging folder, and the records named by
+     *  SHA-1s in the blobs and commits folders. */
+    private static void deleteRecords(File folder) {
+        List<String> names = Utils.plainFilenamesIn(folder);
+        if (names == null) {
+            return;
+        }
+        boolean staging = folder.equals(STAGING_AREA)
+            || folder.equals(REMOVAL_AREA);
+        for (String name : names) {
+            if (staging || name.length() == Utils.UID_LENGTH) {
+                Utils.join(folder, name).delete();
+            }
+        }
+    }
+
+    /** Returns the record of class TYPE that the first version wrote in
+     *  FILE. */
+    static <T> T read(File file, Class<T> type) {
+        if (!file.isFile()) {
+            throw Utils.error("Cannot find %s.", file.getName());
+        }
+        try (ObjectInputStream in = new RecordInputStream(
+                new ByteArrayInputStream(Utils.readContents(file)))) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw Utils.error("Cannot read %s.", file.getName());
+        }
+    }
+
+    /** A stream that reads the first version's records into Record
+     *  classes. */
+    private static class RecordInputStream extends ObjectInputStream {
+
+        /** A stream reading records from IN. */
+        RecordInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> record = RECORDS.get(desc.getName());
+            return record == null ? desc : ObjectStreamClass.lookup(record);
+        }
+    }
+}
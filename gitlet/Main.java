@@ -2,79 +2,147 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Akshay Patel
  */
 public class Main {
 
-    /** Current working directory. */
-    static final File CWD = new File(".");
+    /** Current working directory, which the gitlet.cwd system property
+     *  overrides so that benchmarks and tests can run gitlet on a
+     *  repository of their own. */
+    static final File CWD = new File(System.getProperty("gitlet.cwd", "."));
 
     /** Main metadata folder. */
     static final File GITLET_FOLDER = Utils.join(CWD, ".gitlet");
 
-    /** Folder for the staging area. */
-    static final File STAGING_AREA = Utils.join(GITLET_FOLDER, "stagingArea");
+    /** Folder where older versions kept a record of each branch, which
+     *  migrate deletes. */
+    static final File WORKING_TREES = Utils.join(GITLET_FOLDER, "workingTrees");
 
-    /** Folder for staging file removal. */
-    static final File REMOVAL_AREA = Utils.join(GITLET_FOLDER, "removalArea");
+    /** Folder for branch refs, each holding the SHA-1 of a branch head. */
+    static final File REFS_FOLDER = Utils.join(GITLET_FOLDER, "refs");
 
-    /** Folder for working trees. */
-    static final File WORKING_TREES = Utils.join(GITLET_FOLDER, "workingTrees");
+    /** File naming the current branch. */
+    static final File HEAD_FILE = Utils.join(GITLET_FOLDER, "HEAD");
+
+    /** Commands that only read the repository, and so lock it shared. */
+    static final Set<String> READ_ONLY =
+        Set.of("log", "global-log", "find", "status", "diff");
+
+    /** Largest number of threads that hash or write files. */
+    static final int WORKERS =
+        Math.min(8, Runtime.getRuntime().availableProcessors());
 
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
+    /** Usage: java gitlet.Main [--trace[=FILE]] ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        if (args.length > 0 && (args[0].equals(Trace.FLAG)
+                || args[0].startsWith(Trace.FLAG + "="))) {
+            System.setProperty(Trace.PROPERTY,
+                    args[0].equals(Trace.FLAG) ? Trace.SUMMARY
+                    : args[0].substring(Trace.FLAG.length() + 1));
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Runs the command in ARGS, tracing it if tracing is on.  A command
+     * that cannot go on throws a GitletException whose message is
+     * printed in place of its output.  The command's changes are
+     * committed through the Journal only if it finishes, and are
+     * otherwise discarded; either way, the locks it took are released
+     * only then.  A leading --trace is ignored, as tracing is
+     * turned on only as the JVM starts.
+     * @param args
+     * String of args */
+    static void run(String... args) throws IOException {
+        if (args.length > 0 && args[0].startsWith(Trace.FLAG)) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Trace.begin(args);
+        try {
+            main1(args);
+            Journal.commit();
+        } finally {
+            Journal.abort();
+            RepositoryLock.releaseAll();
+            Trace.finish();
+        }
+    }
+
+    /** Part 1 of main.
+     * @param args
+     * String of args */
+    private static void main1(String[] args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw new GitletException("Please enter a command.");
         }
         if (!args[0].equals("init")) {
             if (!GITLET_FOLDER.exists()) {
-                System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
+                throw new GitletException(
+                        "Not in an initialized Gitlet directory.");
             }
+            lock(args[0]);
         }
         switch (args[0]) {
         case "init":
             if (args.length != 1) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             initialize(args);
             break;
         case "add":
-            if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+            if (args.length < 2) {
+                throw new GitletException("Incorrect operands.");
             }
             add(args);
             break;
         case "commit":
             if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             commit(args);
             break;
         case "rm":
             if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             rm(args);
             break;
         case "log":
             if (args.length != 1) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             log(args);
             break;
@@ -82,7 +150,27 @@ public class Main {
             main2(args);
             break;
         }
-        System.exit(0);
+    }
+
+    /** Locks the repository for COMMAND, shared if it only reads, and
+     * replays the journal record left by an interrupted command, which
+     * takes the exclusive lock.  The daemon takes no lock, as each
+     * command it runs takes its own.
+     * @param command
+     * name of the command */
+    private static void lock(String command) {
+        if (command.equals("daemon")) {
+            return;
+        }
+        boolean shared = READ_ONLY.contains(command);
+        RepositoryLock.acquire(GITLET_FOLDER, shared);
+        if (Journal.JOURNAL_FILE.isFile()) {
+            if (shared) {
+                RepositoryLock.releaseAll();
+                RepositoryLock.acquire(GITLET_FOLDER, false);
+            }
+            Journal.recover();
+        }
     }
 
     /** Part 2 of main.
@@ -92,22 +180,20 @@ public class Main {
         switch (args[0]) {
         case "global-log":
             if (args.length != 1) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             globalLog(args);
             break;
         case "find":
-            if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+            if (args.length != 2
+                && !(args.length == 3 && args[1].equals("--all"))) {
+                throw new GitletException("Incorrect operands.");
             }
             find(args);
             break;
         case "status":
             if (args.length != 1) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             status(args);
             break;
@@ -115,7 +201,6 @@ public class Main {
             main3(args);
             break;
         }
-        System.exit(0);
     }
 
 
@@ -126,192 +211,355 @@ public class Main {
         switch (args[0]) {
         case "checkout":
             if (args.length <= 1 || args.length >= 5) {
-                System.out.println("Incorrect operands");
-                System.exit(0);
+                throw new GitletException("Incorrect operands");
             }
             if (args.length == 2) {
                 if (args[1].equals("--")) {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
             }
             if (args.length == 3) {
                 if (!args[1].equals("--")) {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
             }
             if (args.length == 4) {
                 if (!args[2].equals("--")) {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
             }
             checkout(args);
             break;
         case "branch":
             if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             branch(args);
             break;
         case "rm-branch":
             if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             rmBranch(args);
             break;
         case "reset":
             if (args.length != 2) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             }
             reset(args);
             break;
         case "merge":
+            if (args.length != 2) {
+                throw new GitletException("Incorrect operands.");
+            }
             merge(args);
             break;
-        default:
-            System.out.println("No command with that name exists.");
+        case "diff":
+            if (args.length > 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            diff(args);
             break;
+        case "add-remote":
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            addRemote(args);
+            break;
+        case "rm-remote":
+            if (args.length != 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+            rmRemote(args);
+            break;
+        case "fetch":
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            fetch(args);
+            break;
+        case "push":
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            push(args);
+            break;
+        case "pull":
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+            pull(args);
+            break;
+        case "gc":
+            if (args.length != 1) {
+                throw new GitletException("Incorrect operands.");
+            }
+            gc(args);
+            break;
+        case "migrate":
+            if (args.length != 1) {
+                throw new GitletException("Incorrect operands.");
+            }
+            migrate(args);
+            break;
+        case "daemon":
+            if (args.length == 1) {
+                Daemon.serve();
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                Daemon.stop();
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+            break;
+        default:
+            throw new GitletException("No command with that name exists.");
         }
-        System.exit(0);
     }
 
     /** Initialize.
      * @param args */
     public static void initialize(String[] args) {
         if (GITLET_FOLDER.exists()) {
-            System.out.println("A Gitlet version-control system "
+            throw new GitletException("A Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
         }
         GITLET_FOLDER.mkdir();
-        STAGING_AREA.mkdir();
-        REMOVAL_AREA.mkdir();
-        WORKING_TREES.mkdir();
+        REFS_FOLDER.mkdir();
         Blob.BLOB_FOLDER.mkdir();
         Commit.COMMIT_FOLDER.mkdir();
 
         WorkingTree newTree = new WorkingTree("master");
-        newTree.changeIsCurrent(true);
+        newTree.makeCurrent();
         Commit thisCommit = new Commit("initial commit", null);
         thisCommit.saveCommit();
-        newTree.addCommit(thisCommit);
+        newTree.setHead(thisCommit.getCodeName());
         newTree.saveWorkingTree();
+        Index.fromCommit(thisCommit).write();
     }
 
-    /** Add.
+    /** Add.  Each operand may name a file, a directory, whose files
+     * are all added, or a glob matched against the paths of working
+     * files.  Files are hashed and stored in parallel, and the index is
+     * written once at the end; nothing is staged if any operand names
+     * no file.
      * @param args */
-    public static void add(String[] args) throws IOException {
-        if (!Utils.join(CWD, args[1]).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+    public static void add(String[] args) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> working = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (working == null && !isPlainFile(args[i])) {
+                working = workingFiles();
+            }
+            int count = names.size();
+            addOperand(args[i], working, names);
+            if (names.size() == count && !isPlainFile(args[i])) {
+                throw new GitletException("File does not exist.");
+            }
         }
-        WorkingTree thisTree = WorkingTree.getCurrentBranch();
-        Commit thisCommit = thisTree.getHeadCommit();
-        Blob testBlob = new Blob(Utils.join(CWD, args[1]));
+        Index index = Index.read();
+        ArrayList<String> files = new ArrayList<>(names);
+        ArrayList<long[]> stats = new ArrayList<>();
+        ArrayList<Callable<ObjectId>> hashes = new ArrayList<>();
+        for (String name : files) {
+            long[] stat = Index.stat(Utils.join(CWD, name));
+            stats.add(stat);
+            hashes.add(() -> stage(index, name, stat));
+        }
+        List<ObjectId> codes = inParallel(hashes);
+        for (int i = 0; i < files.size(); i += 1) {
+            if (codes.get(i) == null) {
+                continue;
+            }
+            File file = Utils.join(CWD, files.get(i));
+            if (!Arrays.equals(stats.get(i), Index.stat(file))) {
+                throw new GitletException("File changed while it was added.");
+            }
+            index.add(files.get(i), codes.get(i), file);
+        }
+        index.write();
+    }
 
-        if (thisCommit.getBlobMap().containsValue(testBlob.getBlobSHA1())) {
-            Files.deleteIfExists(Utils.join(STAGING_AREA, args[1]).toPath());
-        } else {
-            Files.deleteIfExists(Utils.join(STAGING_AREA, args[1]).toPath());
-            Files.copy(Utils.join(CWD, args[1]).toPath(),
-                    Utils.join(STAGING_AREA, args[1]).toPath());
+    /** Returns true iff NAME is an existing file, and so not a
+     * directory or a glob.
+     * @param name
+     * an operand of add
+     * @return true iff NAME is a file */
+    private static boolean isPlainFile(String name) {
+        String path = pathOf(name);
+        return path != null && Utils.join(CWD, path).isFile();
+    }
+
+    /** Adds to NAMES the paths of the files that the operand NAME of add
+     * stands for, taken from WORKING, the paths of all working files,
+     * unless NAME is a file.
+     * @param name
+     * an operand of add
+     * @param working
+     * paths of working files, or null if NAME is a file
+     * @param names
+     * receives paths */
+    private static void addOperand(String name, List<String> working,
+                                   TreeSet<String> names) {
+        String path = pathOf(name);
+        if (path != null && Utils.join(CWD, path).isFile()) {
+            names.add(path);
+            return;
+        }
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        if (root.equals(root.resolve(name).normalize())) {
+            names.addAll(working);
+        } else if (path != null && Utils.join(CWD, path).isDirectory()) {
+            for (String file : working) {
+                if (file.startsWith(path + Tree.SEPARATOR)) {
+                    names.add(file);
+                }
+            }
+        } else if (name.matches(".*[*?\\[{].*")) {
+            PathMatcher glob =
+                FileSystems.getDefault().getPathMatcher("glob:" + name);
+            for (String file : working) {
+                if (glob.matches(Paths.get(file))) {
+                    names.add(file);
+                }
+            }
         }
-        Files.deleteIfExists(Utils.join(REMOVAL_AREA, args[1]).toPath());
+    }
+
+    /** Returns the SHA1 of the blob add should record for working file
+     * NAME, whose stat data were STAT before it was read, storing the
+     * blob if it is new.  Returns null if INDEX shows the file is
+     * unchanged.  Only reads INDEX, so may run in parallel with other
+     * calls.
+     * @param index
+     * the index
+     * @param name
+     * path of a working file
+     * @param stat
+     * stat data of the file
+     * @return SHA1 of blob, or null */
+    private static ObjectId stage(Index index, String name, long[] stat) {
+        File file = Utils.join(CWD, name);
+        ObjectId code = index.get(name);
+        if (code != null && index.isUnchanged(name, stat)) {
+            return null;
+        }
+        if (code == null || !code.equals(new Blob(file).getId())) {
+            code = Blob.store(file).getId();
+        }
+        return code;
     }
 
     /** Commit.
      * @param args */
     public static void commit(String[] args) {
         if (args[1].isEmpty()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
-
-        } else if (STAGING_AREA.listFiles().length == 0
-                && REMOVAL_AREA.listFiles().length == 0) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
 
         }
         WorkingTree thisTree = WorkingTree.getCurrentBranch();
-        Commit newCommit = new Commit(args[1],
-                thisTree.getHeadCommit());
-        newCommit.cloneBlob(thisTree.getHeadCommit());
-        for (File file : STAGING_AREA.listFiles()) {
-            Blob newBlob = new Blob(file);
-            newCommit.addBlob(newBlob);
-            newBlob.saveBlob();
-        }
-        for (String file: Utils.plainFilenamesIn(REMOVAL_AREA)) {
+        Commit head = thisTree.getHeadCommit();
+        Index index = Index.read();
+        TreeMap<String, ObjectId> staged = index.staged(head);
+        TreeMap<String, ObjectId> removed = index.removed(head);
+        if (staged.isEmpty() && removed.isEmpty()) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        commitIndex(thisTree, head, staged, removed, args[1], null);
+    }
+
+    /** Records the index as a new commit on the current branch.
+     * @param thisTree
+     * current branch
+     * @param head
+     * its head commit
+     * @param staged
+     * the files the index stages against HEAD, with their blobs
+     * @param removed
+     * the files the index removes from HEAD
+     * @param message
+     * commit message
+     * @param secondParent
+     * commit being merged in, or null */
+    private static void commitIndex(WorkingTree thisTree, Commit head,
+                                    TreeMap<String, ObjectId> staged,
+                                    TreeMap<String, ObjectId> removed,
+                                    String message, Commit secondParent) {
+        Commit newCommit = new Commit(message, head, secondParent);
+        for (Map.Entry<String, ObjectId> file : staged.entrySet()) {
+            newCommit.addBlob(file.getKey(), file.getValue());
+        }
+        for (String file : removed.keySet()) {
             newCommit.removeBlob(file);
         }
         newCommit.saveCommit();
-        thisTree.addCommit(newCommit);
+        thisTree.setHead(newCommit.getCodeName());
         thisTree.saveWorkingTree();
-        for (File file : STAGING_AREA.listFiles()) {
-            file.delete();
-        }
-        for (File file : REMOVAL_AREA.listFiles()) {
-            file.delete();
-        }
     }
 
     /** Remove file.
      * @param args */
-    public static void rm(String[] args) throws IOException {
-        Commit thisCommit = WorkingTree.getCurrentBranch().getHeadCommit();
-        if ((!thisCommit.getBlobMap().containsKey(args[1]))
-            && (!Utils.join(STAGING_AREA, args[1]).exists())) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+    public static void rm(String[] args) {
+        Commit thisCommit = WorkingTree.currentHeadCommit();
+        Index index = Index.read();
+        String name = pathOf(args[1]);
+        if (name == null || (!thisCommit.getBlobMap().containsKey(name))
+            && (!index.contains(name))) {
+            throw new GitletException("No reason to remove the file.");
         }
-        Files.deleteIfExists(Utils.join(STAGING_AREA, args[1]).toPath());
-        if (thisCommit.getBlobMap().containsKey(args[1])) {
-            if (Utils.join(CWD, args[1]).exists()) {
-                Files.copy(Utils.join(CWD, args[1]).toPath(),
-                        Utils.join(REMOVAL_AREA, args[1]).toPath());
-                Utils.restrictedDelete(Utils.join(CWD, args[1]));
-            }
+        index.remove(name);
+        if (thisCommit.getBlobMap().containsKey(name)) {
+            deleteWorkingFile(name);
         }
+        index.write();
     }
 
     /** Log.
      * @param args */
     public static void log(String[] args) {
-        WorkingTree thisTree = WorkingTree.getCurrentBranch();
-        Commit thisCommit = thisTree.getHeadCommit();
-        while (thisCommit != null) {
-            System.out.println(thisCommit.getLog());
-            thisCommit = thisCommit.getParent();
+        String head = WorkingTree.headOf(WorkingTree.currentBranchName());
+        CommitGraph graph = CommitGraph.readWith(head);
+        for (int i = graph.indexOf(head); i != CommitGraph.NONE;
+             i = graph.parent(i)) {
+            System.out.println(Commit.fromFile(graph.id(i)).getLog());
         }
     }
 
     /** Global Log.
      * @param args */
     public static void globalLog(String[] args) {
-        List<String> allCommits = Utils.plainFilenamesIn(Commit.COMMIT_FOLDER);
-        for (String commit : allCommits) {
-            System.out.println(Commit.fromFile(commit).getLog());
+        for (CommitLog.Entry entry : CommitLog.read()) {
+            System.out.println(entry.getLog());
         }
     }
 
-    /** Find.
+    /** Find.  With --all, also finds commits whose messages contain the
+     * given text, or all of its words in any order and case.
      * @param args */
     public static void find(String[] args) {
+        CommitLog log = CommitLog.read();
+        boolean all = args.length == 3;
+        String text = args[args.length - 1];
+        Iterable<CommitLog.Entry> candidates = log;
+        if (!all && !CommitLog.words(text).isEmpty()) {
+            candidates = log.withWords(text);
+        }
+        HashSet<String> byWords = new HashSet<>();
+        if (all) {
+            for (CommitLog.Entry entry : log.withWords(text)) {
+                byWords.add(entry.getCodeName());
+            }
+        }
         int counter = 0;
-        for (String file: Utils.plainFilenamesIn(Commit.COMMIT_FOLDER)) {
-            if (Commit.fromFile(file).getMessage().equals(args[1])) {
-                System.out.println(file);
+        for (CommitLog.Entry entry : candidates) {
+            String message = entry.getMessage();
+            if (message.equals(text) || all && (message.contains(text)
+                    || byWords.contains(entry.getCodeName()))) {
+                System.out.println(entry.getCodeName());
                 counter += 1;
             }
         }
         if (counter == 0) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw new GitletException("Found no commit with that message.");
         }
     }
 
@@ -319,269 +567,234 @@ public class Main {
      * @return String */
     private static String statusBranches() {
         String branchesString = "";
-        ArrayList<String> branches = new ArrayList<>();
-        for (String file: Utils.plainFilenamesIn(WORKING_TREES)) {
-            branches.add(file);
-        }
-        Collections.sort(branches);
-        for (String file : branches) {
-            if (WorkingTree.fromFile(file).isCurrent()) {
-                branches.set(branches.indexOf(file), "*" + file);
-            }
-        }
+        ArrayList<String> branches =
+                new ArrayList<>(WorkingTree.branchNames());
+        String current = WorkingTree.currentBranchName();
+        branches.set(branches.indexOf(current), "*" + current);
         for (String file : branches) {
             branchesString += file + "\n";
         }
         return branchesString;
     }
 
-    /** Staged part of status.
+    /** Lists FILES, one per line, as part of status.
+     * @param files
+     * file names, in order
      * @return String */
-    private static String statusStaged() {
-        String stagedString = "";
-        ArrayList<String> staged =
-                new ArrayList<>(Utils.plainFilenamesIn(STAGING_AREA));
-        Collections.sort(staged);
-        for (String file : staged) {
-            stagedString += file + "\n";
+    private static String statusList(Iterable<String> files) {
+        StringBuilder result = new StringBuilder();
+        for (String file : files) {
+            result.append(file).append("\n");
         }
-        return stagedString;
+        return result.toString();
     }
 
-    /** Removed part of status.
-     * @param thisCommit
-     * the current Commit
-     * @return String */
-    private static String statusRemoved(Commit thisCommit) {
-        String removedString = "";
-        ArrayList<String> removed =
-                new ArrayList<>(Utils.plainFilenamesIn(REMOVAL_AREA));
-        ArrayList<String> keys =
-                new ArrayList<String>(thisCommit.getBlobMap().keySet());
-        for (int i = 0; i < keys.size(); i += 1) {
-            if (!Utils.join(CWD, keys.get(i)).exists()) {
-                if (!removed.contains(keys.get(i))) {
-                    removed.add(keys.get(i));
-                }
+    /** Modifications and untracked parts of status.  Tracked files
+     * whose stat data match the index are not read.
+     * @param index
+     * the index
+     * @param modifications
+     * receives modified and deleted files
+     * @param untracked
+     * receives untracked files */
+    private static void statusWorkingFiles(Index index,
+                                           ArrayList<String> modifications,
+                                           ArrayList<String> untracked) {
+        TreeSet<String> files = new TreeSet<>(workingFiles());
+        for (String file : index.getBlobMap().keySet()) {
+            if (!files.contains(file)) {
+                modifications.add(file + " (deleted)");
+            } else if (index.isModified(file, Utils.join(CWD, file))) {
+                modifications.add(file + " (modified)");
             }
         }
-        Collections.sort(removed);
-        for (String file : removed) {
-            removedString += file + "\n";
+        for (String file : files) {
+            if (!index.contains(file)) {
+                untracked.add(file);
+            }
         }
-        return removedString;
+        Collections.sort(modifications);
     }
 
     /** Status.
      * @param args */
     public static void status(String[] args) {
-        WorkingTree thisTree = WorkingTree.getCurrentBranch();
-        Commit thisCommit = thisTree.getHeadCommit();
-
-        String branchTitle = "=== Branches ===";
-
-        String stagedTitle = "\n" + "=== Staged Files ===";
-
-        String removedTitle = "\n" + "=== Removed Files ===";
-
-
-        ArrayList<String> modifications
-                = new ArrayList<>(Utils.plainFilenamesIn(CWD));
-        String modificationsString = "";
-        Collections.sort(modifications);
-        HashMap<String, String> modsAndSits =
-                new HashMap<String, String>();
-        String modificationsTitle =
-                "\n" + "=== Modifications Not Staged For Commit ===";
-        for (String file : modifications) {
-            if ((thisCommit.getBlobMap().containsKey(file))
-                && (!thisCommit.getBlobMap().get(file)
-                    .equals(Utils.sha1(Utils.join(CWD, file).getName()
-                            + Utils.readContentsAsString
-                            (Utils.join(CWD, file)))))
-                && (!Utils.join(STAGING_AREA, file).exists())) {
-                modsAndSits.put(file, " (modified)");
-            } else if (!CWD.exists()) {
-                String placeHolder = "I dont want to do this";
-            } else if ((Utils.join(STAGING_AREA, file).exists())
-                        && (!Utils.join(CWD, file).exists())) {
-                modsAndSits.put(file, " (deleted)");
-            }
-        }
-
-        String untrackedTitle = "\n" + "=== Untracked Files ===";
-        String untrackedString = "";
-        ArrayList<String> untracked =  new ArrayList<>();
+        Commit thisCommit = WorkingTree.currentHeadCommit();
+        Index index = Index.read();
+        ArrayList<String> modifications = new ArrayList<>();
+        ArrayList<String> untracked = new ArrayList<>();
+        statusWorkingFiles(index, modifications, untracked);
+        index.refresh();
         System.out.println(
-                branchTitle + "\n" + statusBranches() + stagedTitle + "\n"
-                        + statusStaged() +  removedTitle
-                        + "\n" + statusRemoved(thisCommit)
-                        + modificationsTitle + "\n"
-                        + modificationsString + untrackedTitle + "\n"
-                        + untrackedString);
-
+                "=== Branches ===" + "\n" + statusBranches()
+                        + "\n" + "=== Staged Files ===" + "\n"
+                        + statusList(index.staged(thisCommit).keySet())
+                        + "\n" + "=== Removed Files ===" + "\n"
+                        + statusList(index.removed(thisCommit).keySet())
+                        + "\n" + "=== Modifications Not Staged For Commit ==="
+                        + "\n" + statusList(modifications)
+                        + "\n" + "=== Untracked Files ===" + "\n"
+                        + statusList(untracked));
     }
 
     /** Checks if the branch exists.
      * @param args
      * A string of arguments */
     private static void noBranchExists(String[] args) {
-        if (!Utils.join(WORKING_TREES, args[1]).exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        if (!WorkingTree.exists(args[1])) {
+            throw new GitletException("No such branch exists.");
         }
     }
 
     /** Checks if current branch is head.
-     * @param branchTree
+     * @param branch
      * The intended branch */
-    private static void currentBranch(WorkingTree branchTree) {
-        if (branchTree.isCurrent()) {
-            System.out.println("No need to check out the current branch.");
-            System.exit(0);
-        }
-    }
-
-    /** Check if there are untracked files.
-     * @param currHead
-     * Current head
-     * @param branchTree
-     * Intended branch */
-    private static void untrackedFile(Commit currHead, WorkingTree branchTree) {
-        for (String file : Utils.plainFilenamesIn(CWD)) {
-            Blob testBlob = new Blob(Utils.join(CWD, file));
-            if (!currHead.getBlobMap().containsKey(file)) {
-                if ((branchTree.getHeadCommit()
-                        .getBlobMap().containsKey(file))
-                        && (!branchTree.getHeadCommit().getBlobMap().get(file)
-                        .equals(testBlob.getBlobSHA1()))) {
-                    System.out.println("There is "
-                            + "an untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-                    System.exit(0);
-                }
-            }
+    private static void currentBranch(String branch) {
+        if (branch.equals(WorkingTree.currentBranchName())) {
+            throw new GitletException(
+                    "No need to check out the current branch.");
         }
     }
 
-    /** Changes tree as specified.
-     * @param thisTree
-     * Current tree
-     * @param branchTree
-     * Intended tree
-     * @param currHead
-     * Current head
-     * @param headOfBranch
-     * Head of intended branch */
-    private static void changeTree(WorkingTree thisTree,
-                                   WorkingTree branchTree,
-                                   Commit currHead, Commit headOfBranch) {
-        ArrayList<String> currKeys =
-                new ArrayList<String>(currHead.getBlobMap().keySet());
-        for (String key : currKeys) {
-            if ((currHead.getBlobMap().containsKey(key))
-                    && (!headOfBranch.getBlobMap().containsKey(key))) {
-                Utils.restrictedDelete(key);
-            }
-        }
-        for (File file : STAGING_AREA.listFiles()) {
-            file.delete();
-        }
-        for (File file : REMOVAL_AREA.listFiles()) {
-            file.delete();
-        }
-        thisTree.changeIsCurrent(false);
-        thisTree.saveWorkingTree();
-
-        branchTree.changeIsCurrent(true);
-        branchTree.saveWorkingTree();
-    }
-
     /** Checkout.
      * @param args */
     public static void checkout(String[] args) throws IOException {
-        WorkingTree thisTree = WorkingTree.getCurrentBranch();
-        Commit currHead = thisTree.getHeadCommit();
+        Commit currHead = WorkingTree.currentHeadCommit();
         if (args.length == 2) {
             noBranchExists(args);
-            WorkingTree branchTree = WorkingTree.fromFile(args[1]);
-            currentBranch(branchTree);
-            untrackedFile(currHead, branchTree);
-            Commit headOfBranch = branchTree.getHeadCommit();
-            ArrayList<String> branchKeys =
-                    new ArrayList<String>(headOfBranch.getBlobMap().keySet());
-            for (String key : branchKeys) {
-                Utils.writeContents(Utils.join(CWD, key),
-                        Blob.fromFile(headOfBranch.getBlobMap()
-                                .get(key)).getContents());
-            }
-            changeTree(thisTree, branchTree, currHead, headOfBranch);
+            currentBranch(args[1]);
+            Commit headOfBranch =
+                    Commit.fromFile(WorkingTree.headOf(args[1]));
+            Index index = Index.read();
+            checkUntracked(index, headOfBranch);
+            checkoutCommit(index, currHead, headOfBranch);
+            new WorkingTree(args[1]).makeCurrent();
         } else if (args[1].equals("--")) {
-            if (!currHead.getBlobMap().containsKey(args[2])) {
-                System.out.println("File does not exist in that commit.");
-                System.exit(0);
+            String file = pathOf(args[2]);
+            if (file == null || !currHead.getBlobMap().containsKey(file)) {
+                throw new GitletException(
+                        "File does not exist in that commit.");
             }
-            Blob thisBlob = Blob.fromFile(currHead.getBlobMap().get(args[2]));
-            Utils.writeContents(Utils.join(CWD, args[2]),
-                    thisBlob.getContents());
+            Blob thisBlob = Blob.fromFile(currHead.getBlobMap().get(file));
+            thisBlob.writeTo(Utils.join(CWD, file));
 
         } else if (args[2].equals("--")) {
-            if (args[1].length() == 8) {
-                if (!thisTree.getSixDigitCommitMap().containsKey(args[1])) {
-                    System.out.println("No commit with that id exists.");
-                    System.exit(0);
-                }
-                Commit commit = Commit.
-                        fromFile(thisTree.getSixDigitCommitMap().get(args[1]));
-                if (!commit.getBlobMap().containsKey(args[3])) {
-                    System.out.println("File does not exist in that commit.");
-                    System.exit(0);
-                }
-                Blob thisBlob = Blob.fromFile(commit.getBlobMap().get(args[3]));
-                Utils.writeContents(Utils.join(CWD, args[3]),
-                        thisBlob.getContents());
-
-            } else if (args[1].length() != 8) {
-                if (!thisTree.getCommitMap().containsKey(args[1])) {
-                    System.out.println("No commit with that id exists.");
-                    System.exit(0);
-                }
-                Commit commit = Commit.fromFile(args[1]);
-                if (!commit.getBlobMap().containsKey(args[3])) {
-                    System.out.println("File does not exist in that commit.");
-                    System.exit(0);
+            Commit commit = Commit.fromFile(commitId(args[1]));
+            String file = pathOf(args[3]);
+            if (file == null || !commit.getBlobMap().containsKey(file)) {
+                throw new GitletException(
+                        "File does not exist in that commit.");
+            }
+            commit.getBlob(file).writeTo(Utils.join(CWD, file));
+        }
+    }
+
+    /** Returns the SHA-1 of the commit named by ID, which may be
+     * abbreviated to any unique prefix of IdIndex.MIN_PREFIX or more
+     * digits.  Throws a GitletException if no commit, or more than one,
+     * starts with ID.
+     * @param id
+     * a full or abbreviated SHA-1
+     * @return SHA-1 */
+    static String commitId(String id) {
+        if (id.length() == Utils.UID_LENGTH && Commit.exists(id)) {
+            return id;
+        }
+        List<String> matches = Commit.COMMIT_STORE.resolve(id);
+        if (matches.isEmpty()) {
+            throw new GitletException("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous: it could be %s.",
+                    id, String.join(", ", matches));
+        }
+        return matches.get(0);
+    }
+
+    /** Returns the SHA-1 of the commit named by NAME, the name of a
+     * branch or a full or abbreviated commit id.
+     * @param name
+     * a branch or commit
+     * @return SHA-1 */
+    private static String revision(String name) {
+        if (WorkingTree.exists(name)) {
+            return WorkingTree.headOf(name);
+        }
+        return commitId(name);
+    }
+
+    /** Diff.  With no operands, shows the changes in the working
+     * directory that are not staged; with --cached and an optional
+     * commit, those staged relative to it or to the head; with one
+     * commit, those in the working directory relative to it; and with
+     * two commits, those from the first to the second.  Commits are
+     * compared Tree by Tree, and files with the same blob on both sides
+     * are skipped unread, as are tracked files whose stat data match
+     * the index.
+     * @param args */
+    public static void diff(String[] args) {
+        TreeMap<String, ObjectId[]> changes;
+        boolean cached = args.length > 1 && args[1].equals("--cached");
+        if (args.length == 3 && !cached) {
+            changes = Tree.changes(
+                    Commit.fromFile(revision(args[1])).getTreeCode(),
+                    Commit.fromFile(revision(args[2])).getTreeCode());
+        } else {
+            Commit base = args.length == (cached ? 2 : 1)
+                ? WorkingTree.currentHeadCommit()
+                : Commit.fromFile(revision(args[args.length - 1]));
+            Index index = Index.read();
+            if (cached) {
+                changes = Diff.changes(base.getBlobMap(), index.getBlobMap());
+            } else {
+                TreeMap<String, ObjectId> working = new TreeMap<>();
+                for (String file : index.getBlobMap().keySet()) {
+                    File path = Utils.join(CWD, file);
+                    if (path.isFile()) {
+                        working.put(file, index.isModified(file, path)
+                                ? Diff.WORKING : index.get(file));
+                    }
                 }
-                Utils.writeContents(Utils.join(CWD, args[3]),
-                        commit.getBlob(args[3]).getContents());
+                index.refresh();
+                changes = Diff.changes(args.length == 1
+                        ? index.getBlobMap() : base.getBlobMap(), working);
             }
         }
+        System.out.print(Diff.format(changes));
     }
 
-    /** Create branch.
+    /** Create branch.  A branch may not take the name of a remote, as
+     * the branches fetched from a remote are kept in a folder of that
+     * name beside the refs of branches.
      * @param args */
     public static void branch(String[] args) {
-        if (Utils.join(WORKING_TREES, args[1]).exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (!WorkingTree.isBranchName(args[1])) {
+            throw new GitletException("Not a valid branch name.");
+        }
+        if (WorkingTree.exists(args[1])) {
+            throw new GitletException(
+                    "A branch with that name already exists.");
+        }
+        if (Remote.exists(args[1])
+                || Utils.join(REFS_FOLDER, args[1]).isDirectory()) {
+            throw new GitletException(
+                    "A remote with that name already exists.");
         }
         WorkingTree newBranch = new WorkingTree(args[1]);
-        Commit copiedCommit = WorkingTree.getCurrentBranch().getHeadCommit();
-        newBranch.addCommit(copiedCommit);
+        newBranch.setHead(WorkingTree.headOf(WorkingTree.currentBranchName()));
         newBranch.saveWorkingTree();
     }
 
     /** Remove branch.
      * @param args */
     public static void rmBranch(String[] args) throws IOException {
-        if (!Utils.join(WORKING_TREES, args[1]).exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!WorkingTree.exists(args[1])) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
         }
-        if (WorkingTree.fromFile(args[1]).isCurrent()) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+        if (args[1].equals(WorkingTree.currentBranchName())) {
+            throw new GitletException("Cannot remove the current branch.");
         }
-        Files.deleteIfExists(Utils.join(WORKING_TREES, args[1]).toPath());
+        WorkingTree.delete(args[1]);
     }
 
     /** Reset.
@@ -589,86 +802,461 @@ public class Main {
     public static void reset(String[] args) {
         WorkingTree thisTree = WorkingTree.getCurrentBranch();
         Commit currHead = thisTree.getHeadCommit();
-        Commit newHead = new Commit("placeholder", null);
-        if (args[1].length() == 6) {
-            if (!thisTree.getSixDigitCommitMap().containsKey(args[1])) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-            newHead = Commit.fromFile
-                    (thisTree.getSixDigitCommitMap().get(args[1]));
-            for (String file : Utils.plainFilenamesIn(CWD)) {
-                if (!currHead.getBlobMap().containsKey(file)) {
-                    if (newHead.getBlobMap().containsKey(file)) {
-                        System.out.println("There is "
-                                + "an untracked file in the way; "
-                                + "delete it, or add and commit it first.");
-                        System.exit(0);
-                    }
-                }
+        String code = commitId(args[1]);
+        Commit newHead = Commit.fromFile(code);
+        Index index = Index.read();
+        checkUntracked(index, newHead);
+        checkoutCommit(index, currHead, newHead);
+        thisTree.setHead(code);
+        thisTree.saveWorkingTree();
+    }
+
+    /** Add-remote: records a remote repository, named by the path of
+     * its .gitlet folder.
+     * @param args */
+    public static void addRemote(String[] args) {
+        Remote.add(args[1], args[2]);
+    }
+
+    /** Rm-remote.
+     * @param args */
+    public static void rmRemote(String[] args) {
+        Remote.remove(args[1]);
+    }
+
+    /** Fetch: copies the commits and files of a branch of a remote that
+     * are missing here, and sets the branch REMOTE/BRANCH to its head.
+     * @param args */
+    public static void fetch(String[] args) {
+        Remote.open(args[1]).fetch(args[2]);
+    }
+
+    /** Push: copies the commits and files of the current branch that
+     * are missing from a remote to it, and fast-forwards a branch of the
+     * remote to the current head.
+     * @param args */
+    public static void push(String[] args) {
+        Remote.open(args[1]).push(args[2]);
+    }
+
+    /** Pull: fetches a branch of a remote and merges it into the current
+     * branch.
+     * @param args */
+    public static void pull(String[] args) {
+        Remote remote = Remote.open(args[1]);
+        remote.fetch(args[2]);
+        merge(new String[] {"merge", remote.branchName(args[2])});
+    }
+
+    /** Garbage-collect: pack all objects, using the names that blobs
+     * are tracked under to place similar versions near one another.
+     * @param args */
+    public static void gc(String[] args) {
+        HashMap<String, String> hints = new HashMap<String, String>();
+        for (String code : Commit.COMMIT_STORE.list()) {
+            for (Map.Entry<String, ObjectId> entry
+                     : Commit.fromFile(code).getBlobMap().entrySet()) {
+                hints.putIfAbsent(entry.getValue().toHex(), entry.getKey());
             }
         }
-        if (args[1].length() != 6) {
-            if (!Utils.join(Commit.COMMIT_FOLDER, args[1]).exists()) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-            newHead = Commit.fromFile(args[1]);
-            for (String file: Utils.plainFilenamesIn(CWD)) {
-                Blob testBlob = new Blob(Utils.join(CWD, file));
-                if (!currHead.getBlobMap().containsKey(file)) {
-                    if ((newHead.getBlobMap().containsKey(file))) {
-                        if (!newHead.getBlobMap()
-                                .containsValue(testBlob.getBlobSHA1())) {
-                            System.out.println("There is an untracked "
-                                    + "file in the way; "
-                                    + "delete it, or add and commit it first.");
-                            System.exit(0);
-                        }
-                    }
-                }
+        Blob.BLOB_STORE.repack(hints);
+        Commit.COMMIT_STORE.repack(new HashMap<String, String>());
+    }
+
+    /** Migrate: converts the branches, history and staging area of a
+     * repository written by the first version of gitlet, through
+     * Legacy.  Then rewrites every commit still stored by Java
+     * serialization in Codec's format, leaving their SHA-1s unchanged,
+     * and repacks the commits if any of the old ones were packed.  Also
+     * deletes the branch records of the workingTrees folder, which refs
+     * have replaced.
+     * @param args */
+    public static void migrate(String[] args) {
+        int commits = Legacy.convert();
+        for (String code : Commit.COMMIT_STORE.list()) {
+            byte[] data = Commit.COMMIT_STORE.get(code, Commit.TYPE);
+            if (Codec.isSerialized(data)) {
+                Commit.COMMIT_STORE.replace(code, Commit.TYPE,
+                        Commit.decode(code, data).encode());
+                commits += 1;
             }
         }
-        reset2(args, newHead, currHead, thisTree);
+        if (commits > 0 && !Commit.COMMIT_STORE.packs().isEmpty()) {
+            Commit.COMMIT_STORE.repack(new HashMap<String, String>());
+        }
+        int branches = 0;
+        List<String> records = Utils.plainFilenamesIn(WORKING_TREES);
+        if (records != null) {
+            for (String name : records) {
+                Utils.join(WORKING_TREES, name).delete();
+                branches += 1;
+            }
+            WORKING_TREES.delete();
+        }
+        System.out.println("Migrated " + commits + " commits and "
+                + branches + " branches.");
     }
 
-    /** Reset part 2.
-     * @param args
-     * args of main
-     * @param newHead
-     * new head
+    /** Returns the path of the file NAME relative to the working
+     * directory, with its names separated by slashes, or null if NAME
+     * is not inside the working directory or is inside .gitlet.
+     * @param name
+     * a file name given on the command line
+     * @return path */
+    static String pathOf(String name) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root) || path.equals(root)
+                || path.startsWith(root.resolve(GITLET_FOLDER.getName()))) {
+            return null;
+        }
+        return root.relativize(path).toString()
+            .replace(File.separatorChar, Tree.SEPARATOR);
+    }
+
+    /** Returns the paths of every file in the working directory and its
+     * subdirectories, other than those in .gitlet.
+     * @return paths */
+    static List<String> workingFiles() {
+        long start = Trace.start();
+        ArrayList<String> result = new ArrayList<>();
+        addWorkingFiles(CWD, "", result);
+        Trace.end("Main.workingFiles", start);
+        return result;
+    }
+
+    /** Adds the paths of the files under DIR to RESULT, prefixed by
+     * PREFIX.
+     * @param dir
+     * a directory
+     * @param prefix
+     * path of DIR
+     * @param result
+     * receives paths */
+    private static void addWorkingFiles(File dir, String prefix,
+                                        List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                result.add(prefix + name);
+            } else if (file.isDirectory() && !file.equals(GITLET_FOLDER)) {
+                addWorkingFiles(file, prefix + name + Tree.SEPARATOR,
+                        result);
+            }
+        }
+    }
+
+    /** Deletes the working file at PATH, and then any directories that
+     * this leaves empty.
+     * @param path
+     * path of a file */
+    private static void deleteWorkingFile(String path) {
+        File file = Utils.join(CWD, path);
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Checks that no untracked file would be overwritten by checking
+     * out TARGET.
+     * @param index
+     * the index
+     * @param target
+     * commit to be checked out */
+    private static void checkUntracked(Index index, Commit target) {
+        for (String file : workingFiles()) {
+            ObjectId code = target.getBlobMap().get(file);
+            if (!index.contains(file) && code != null
+                    && !code.equals(new Blob(Utils.join(CWD, file))
+                                    .getId())) {
+                throw new GitletException(
+                        "There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /** Makes the working directory and the index match TARGET, deleting
+     * the files of CURRHEAD that TARGET does not track.  Only files whose
+     * content differs are written: a file is left alone if INDEX already
+     * records TARGET's blob for it and its stat data show it unchanged.
+     * @param index
+     * the index
      * @param currHead
      * current head
-     * @param thisTree
-     * current branch*/
-    public static void reset2(String[] args, Commit newHead,
-                              Commit currHead, WorkingTree thisTree) {
-        ArrayList<String> keys =
-                new ArrayList<String>(newHead.getBlobMap().keySet());
-        for (String key : keys) {
-            if ((currHead.getBlobMap().containsKey(key))
-                    && (!newHead.getBlobMap().containsKey(key))) {
-                Utils.restrictedDelete(key);
+     * @param target
+     * commit to check out */
+    private static void checkoutCommit(Index index, Commit currHead,
+                                       Commit target) {
+        TreeMap<String, ObjectId> files = target.getBlobMap();
+        for (String file : currHead.getBlobMap().keySet()) {
+            if (!files.containsKey(file)) {
+                deleteWorkingFile(file);
+            }
+        }
+        Index result = new Index();
+        TreeMap<String, ObjectId> changed = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+            String name = file.getKey();
+            File working = Utils.join(CWD, name);
+            if (file.getValue().equals(index.get(name)) && working.isFile()
+                    && !index.isModified(name, working)) {
+                result.copy(index, name);
             } else {
-                Utils.writeContents(Utils.join(CWD, key),
-                        newHead.getBlob(key).getContents());
-            }
-        } for (File file : STAGING_AREA.listFiles()) {
-            file.delete();
-        } for (File file : REMOVAL_AREA.listFiles()) {
-            file.delete();
-        } if (args[1].length() == 6) {
-            thisTree.setHead(thisTree.getSixDigitCommitMap().get(args[1]));
-            thisTree.saveWorkingTree();
-        } else {
-            thisTree.setHead(args[1]);
-            thisTree.saveWorkingTree();
+                changed.put(name, file.getValue());
+            }
         }
+        writeBlobs(changed);
+        for (Map.Entry<String, ObjectId> file : changed.entrySet()) {
+            result.add(file.getKey(), file.getValue(),
+                    Utils.join(CWD, file.getKey()));
+        }
+        result.write();
     }
 
-    /** Initialize.
+    /** Writes each file of FILES from its blob, in parallel on at most
+     * WORKERS threads.
+     * @param files
+     * file names mapped to the SHA1s of their blobs */
+    private static void writeBlobs(Map<String, ObjectId> files) {
+        ArrayList<Callable<Void>> writes = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+            ObjectId code = file.getValue();
+            File working = Utils.join(CWD, file.getKey());
+            writes.add(() -> {
+                Blob.fromFile(code).writeTo(working);
+                return null;
+            });
+        }
+        inParallel(writes);
+    }
+
+    /** Runs TASKS on at most WORKERS threads, with at most a few waiting
+     * at a time, and returns their results in order.  A single task is
+     * run on the calling thread.  An exception thrown by any task is
+     * rethrown.
+     * @param tasks
+     * the tasks
+     * @param <T>
+     * type of results
+     * @return results */
+    static <T> List<T> inParallel(List<Callable<T>> tasks) {
+        ArrayList<T> results = new ArrayList<>();
+        if (tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        ExecutorService pool = new ThreadPoolExecutor(WORKERS, WORKERS,
+                0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(4 * WORKERS),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        ArrayList<Future<T>> futures = new ArrayList<>();
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /** Returns the result of TASK, rethrowing any checked exception as
+     * an IllegalArgumentException.
+     * @param task
+     * a task
+     * @param <T>
+     * type of result
+     * @return result */
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException excp) {
+            throw excp;
+        } catch (Exception excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the next entry of ITERATOR, or null if there is none.
+     * @param iterator
+     * an iterator over a blob map
+     * @return Map.Entry */
+    private static Map.Entry<String, ObjectId> next(
+            Iterator<Map.Entry<String, ObjectId>> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** Decides the outcome of a merge for every file in one sorted pass
+     * over the blob maps of the split point, the current head and the
+     * given head.  A file changed only in the given head is taken from
+     * it, and one changed differently in both is a conflict.
+     * @param split
+     * blob map of the split point
+     * @param current
+     * blob map of the current head
+     * @param given
+     * blob map of the given head
+     * @param changes
+     * receives files to take from the given head, mapped to their
+     * blobs, or to null if they are to be removed
+     * @param conflicts
+     * receives conflicting files, mapped to their current and given
+     * blobs, either of which may be null */
+    private static void mergeFiles(TreeMap<String, ObjectId> split,
+                                   TreeMap<String, ObjectId> current,
+                                   TreeMap<String, ObjectId> given,
+                                   TreeMap<String, ObjectId> changes,
+                                   TreeMap<String, ObjectId[]> conflicts) {
+        Iterator<Map.Entry<String, ObjectId>> splitFiles =
+                split.entrySet().iterator();
+        Iterator<Map.Entry<String, ObjectId>> currentFiles =
+                current.entrySet().iterator();
+        Iterator<Map.Entry<String, ObjectId>> givenFiles =
+                given.entrySet().iterator();
+        Map.Entry<String, ObjectId> s = next(splitFiles);
+        Map.Entry<String, ObjectId> c = next(currentFiles);
+        Map.Entry<String, ObjectId> g = next(givenFiles);
+        while (s != null || c != null || g != null) {
+            String file = null;
+            for (Map.Entry<String, ObjectId> entry
+                     : Arrays.asList(s, c, g)) {
+                if (entry != null && (file == null
+                        || entry.getKey().compareTo(file) < 0)) {
+                    file = entry.getKey();
+                }
+            }
+            ObjectId inSplit = null, inCurrent = null, inGiven = null;
+            if (s != null && s.getKey().equals(file)) {
+                inSplit = s.getValue();
+                s = next(splitFiles);
+            }
+            if (c != null && c.getKey().equals(file)) {
+                inCurrent = c.getValue();
+                c = next(currentFiles);
+            }
+            if (g != null && g.getKey().equals(file)) {
+                inGiven = g.getValue();
+                g = next(givenFiles);
+            }
+            if (Objects.equals(inCurrent, inGiven)
+                    || Objects.equals(inSplit, inGiven)) {
+                continue;
+            } else if (Objects.equals(inSplit, inCurrent)) {
+                changes.put(file, inGiven);
+            } else {
+                conflicts.put(file, new ObjectId[] {inCurrent, inGiven});
+            }
+        }
+    }
+
+    /** Returns the contents of blob CODE as a String, or the empty string
+     * if CODE is null.
+     * @param code
+     * SHA1 of a blob, or null
+     * @return String */
+    private static String contentsOf(ObjectId code) {
+        if (code == null) {
+            return "";
+        }
+        return new String(Blob.fromFile(code).getContents(),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Merge.
      * @param args */
     public static void merge(String[] args) {
-
+        WorkingTree thisTree = WorkingTree.getCurrentBranch();
+        Commit currHead = thisTree.getHeadCommit();
+        Index index = Index.read();
+        if (!index.staged(currHead).isEmpty()
+                || !index.removed(currHead).isEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        if (!WorkingTree.exists(args[1])) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
+        }
+        if (args[1].equals(thisTree.getName())) {
+            throw new GitletException("Cannot merge a branch with itself.");
+        }
+        Commit givenHead = Commit.fromFile(WorkingTree.headOf(args[1]));
+        String split = Commit.splitPoint(currHead.getCodeName(),
+                givenHead.getCodeName());
+        if (split.equals(givenHead.getCodeName())) {
+            throw new GitletException("Given branch is an ancestor "
+                    + "of the current branch.");
+        }
+        if (split.equals(currHead.getCodeName())) {
+            checkUntracked(index, givenHead);
+            checkoutCommit(index, currHead, givenHead);
+            thisTree.setHead(givenHead.getCodeName());
+            thisTree.saveWorkingTree();
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        TreeMap<String, ObjectId> changes = new TreeMap<>();
+        TreeMap<String, ObjectId[]> conflicts = new TreeMap<>();
+        mergeFiles(Commit.fromFile(split).getBlobMap(),
+                currHead.getBlobMap(), givenHead.getBlobMap(),
+                changes, conflicts);
+        TreeSet<String> touched = new TreeSet<>(changes.keySet());
+        touched.addAll(conflicts.keySet());
+        for (String file : touched) {
+            if (!index.contains(file) && Utils.join(CWD, file).exists()) {
+                throw new GitletException(
+                        "There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            }
+        }
+        TreeMap<String, ObjectId> taken = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteWorkingFile(change.getKey());
+                index.remove(change.getKey());
+            } else {
+                taken.put(change.getKey(), change.getValue());
+            }
+        }
+        writeBlobs(taken);
+        for (Map.Entry<String, ObjectId> file : taken.entrySet()) {
+            index.add(file.getKey(), file.getValue(),
+                    Utils.join(CWD, file.getKey()));
+        }
+        for (Map.Entry<String, ObjectId[]> conflict : conflicts.entrySet()) {
+            File file = Utils.join(CWD, conflict.getKey());
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, "<<<<<<< HEAD\n",
+                    contentsOf(conflict.getValue()[0]), "=======\n",
+                    contentsOf(conflict.getValue()[1]), ">>>>>>>\n");
+            index.add(conflict.getKey(), Blob.store(file).getId(), file);
+        }
+        index.write();
+        commitIndex(thisTree, currHead, index.staged(currHead),
+                index.removed(currHead), "Merged " + args[1] + " into "
+                + thisTree.getName() + ".", givenHead);
+        if (!conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
     }
 }
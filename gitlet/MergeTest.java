@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of merge: its split points, the changes it takes and the
+ *  conflicts it records.
+ *  @author Akshay Patel */
+public class MergeTest {
+
+    /** Makes a new repository in Main.CWD. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.newRepository();
+    }
+
+    /** Merging an ancestor does nothing, and merging a descendant moves
+     *  the branch forward. */
+    @Test
+    public void ancestors() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.run("branch", "old");
+        CommandTest.commit("f", "2\n", "two");
+        assertEquals("Given branch is an ancestor of the current branch.",
+                CommandTest.run("merge", "old"));
+        String head = CommandTest.head();
+        CommandTest.run("checkout", "old");
+        assertEquals("Current branch fast-forwarded.",
+                CommandTest.run("merge", "master"));
+        assertEquals(head, CommandTest.head());
+        assertEquals("2\n", CommandTest.read("f"));
+    }
+
+    /** Files changed on one side only are taken from it, and files
+     *  changed the same way on both sides are left alone. */
+    @Test
+    public void cleanMerge() throws IOException {
+        CommandTest.commit("keep", "k\n", "keep");
+        CommandTest.commit("gone", "g\n", "gone");
+        CommandTest.commit("same", "s\n", "same");
+        CommandTest.run("branch", "other");
+        CommandTest.commit("mine", "m\n", "mine");
+        CommandTest.commit("same", "s2\n", "same here");
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("keep", "k2\n", "keep there");
+        CommandTest.run("rm", "gone");
+        CommandTest.commit("theirs", "t\n", "theirs");
+        CommandTest.commit("same", "s2\n", "same there");
+        CommandTest.run("checkout", "master");
+        assertEquals("", CommandTest.run("merge", "other"));
+        assertEquals("k2\n", CommandTest.read("keep"));
+        assertEquals("m\n", CommandTest.read("mine"));
+        assertEquals("t\n", CommandTest.read("theirs"));
+        assertEquals("s2\n", CommandTest.read("same"));
+        assertFalse(Utils.join(Main.CWD, "gone").exists());
+        assertTrue(CommandTest.run("log").contains(
+                "Merged other into master."));
+        assertEquals("", CommandTest.status("Staged Files"));
+        assertEquals("", CommandTest.status("Removed Files"));
+    }
+
+    /** Files changed differently on both sides, or changed on one and
+     *  removed on the other, are written with both versions, staged and
+     *  committed in the merge. */
+    @Test
+    public void conflicts() throws IOException {
+        CommandTest.commit("f", "base\n", "f");
+        CommandTest.commit("g", "base\n", "g");
+        CommandTest.run("branch", "other");
+        CommandTest.commit("f", "mine\n", "f here");
+        CommandTest.run("rm", "g");
+        CommandTest.run("commit", "no g here");
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("f", "theirs\n", "f there");
+        CommandTest.commit("g", "theirs\n", "g there");
+        CommandTest.run("checkout", "master");
+        assertEquals("Encountered a merge conflict.",
+                CommandTest.run("merge", "other"));
+        assertEquals("<<<<<<< HEAD\nmine\n=======\ntheirs\n>>>>>>>\n",
+                CommandTest.read("f"));
+        assertEquals("<<<<<<< HEAD\n=======\ntheirs\n>>>>>>>\n",
+                CommandTest.read("g"));
+        assertEquals("", CommandTest.status("Staged Files"));
+        assertEquals("", CommandTest.status(
+                "Modifications Not Staged For Commit"));
+    }
+
+    /** After a merge, the next merge of the same branch splits at the
+     *  commit merged last time rather than at an older ancestor, so
+     *  later changes there are taken without conflict. */
+    @Test
+    public void latestSplitPoint() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.run("branch", "other");
+        CommandTest.commit("g", "mine\n", "g");
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("f", "2\n", "two");
+        CommandTest.run("checkout", "master");
+        assertEquals("", CommandTest.run("merge", "other"));
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("f", "3\n", "three");
+        CommandTest.run("checkout", "master");
+        CommandTest.commit("h", "mine\n", "h");
+        assertEquals("", CommandTest.run("merge", "other"));
+        assertEquals("3\n", CommandTest.read("f"));
+        CommandTest.run("checkout", "other");
+        assertEquals("Current branch fast-forwarded.",
+                CommandTest.run("merge", "master"));
+        assertEquals("mine\n", CommandTest.read("h"));
+    }
+
+    /** Merges that cannot be made are refused before anything is
+     *  changed. */
+    @Test
+    public void refusals() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.run("branch", "other");
+        CommandTest.run("checkout", "other");
+        CommandTest.commit("u", "theirs\n", "u");
+        CommandTest.run("checkout", "master");
+        CommandTest.commit("f", "2\n", "two");
+        assertEquals("A branch with that name does not exist.",
+                CommandTest.run("merge", "none"));
+        assertEquals("Cannot merge a branch with itself.",
+                CommandTest.run("merge", "master"));
+        CommandTest.write("u", "untracked\n");
+        assertEquals("There is an untracked file in the way; "
+                + "delete it, or add and commit it first.",
+                CommandTest.run("merge", "other"));
+        assertEquals("untracked\n", CommandTest.read("u"));
+        CommandTest.write("f", "3\n");
+        CommandTest.run("add", "f");
+        assertEquals("You have uncommitted changes.",
+                CommandTest.run("merge", "other"));
+    }
+}
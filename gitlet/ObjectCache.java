@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/** A cache of objects keyed by their SHA-1s, which, since objects never
+ *  change, never needs invalidating.  Each object has a weight, roughly
+ *  the bytes it occupies.  Objects up to a given weight are held
+ *  strongly, least recently used first, and the oldest are dropped once
+ *  the strongly held objects weigh more than a given limit.  Heavier
+ *  objects are only held weakly, so they are shared while in use but
+ *  never keep the garbage collector from reclaiming them.  The cache
+ *  counts hits and misses, and is safe to use from several threads.
+ *  @author Akshay Patel */
+class ObjectCache<V> {
+
+    /** Largest total weight of the strongly held objects. */
+    private final long _limit;
+
+    /** Largest weight of an object that is held strongly. */
+    private final long _strongLimit;
+
+    /** Gives the weight of each object. */
+    private final ToLongFunction<V> _weigher;
+
+    /** Strongly held objects, least recently used first. */
+    private final LinkedHashMap<String, Strong<V>> _strong =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Weakly held objects. */
+    private final HashMap<String, Weak<V>> _weak = new HashMap<>();
+
+    /** Receives the weak references whose objects have been collected. */
+    private final ReferenceQueue<V> _collected = new ReferenceQueue<>();
+
+    /** Total weight of the strongly held objects. */
+    private long _weight;
+
+    /** Number of lookups that found their object. */
+    private long _hits;
+
+    /** Number of lookups that did not. */
+    private long _misses;
+
+    /** A cache that holds objects weighing at most STRONGLIMIT according
+     *  to WEIGHER strongly, up to a total weight of LIMIT, and heavier
+     *  objects weakly. */
+    ObjectCache(long limit, long strongLimit, ToLongFunction<V> weigher) {
+        _limit = limit;
+        _strongLimit = strongLimit;
+        _weigher = weigher;
+    }
+
+    /** Returns the object cached under ID, or null if there is none. */
+    synchronized V get(String id) {
+        Strong<V> strong = _strong.get(id);
+        if (strong != null) {
+            _hits += 1;
+            return strong._value;
+        }
+        Weak<V> weak = _weak.get(id);
+        V value = weak == null ? null : weak.get();
+        if (value != null) {
+            _hits += 1;
+            return value;
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Caches VALUE under ID, replacing any object already there.  An
+     *  object whose weight has changed may be put again to have it
+     *  weighed anew. */
+    synchronized void put(String id, V value) {
+        expunge();
+        Strong<V> old = _strong.remove(id);
+        if (old != null) {
+            _weight -= old._weight;
+        }
+        _weak.remove(id);
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _strongLimit) {
+            _weak.put(id, new Weak<>(id, value, _collected));
+            return;
+        }
+        _strong.put(id, new Strong<>(value, weight));
+        _weight += weight;
+        Iterator<Strong<V>> oldest = _strong.values().iterator();
+        while (_weight > _limit) {
+            _weight -= oldest.next()._weight;
+            oldest.remove();
+        }
+    }
+
+    /** Returns the number of lookups that found their object. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that did not find their object. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Removes the entries of weakly held objects that have been
+     *  collected. */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        for (Reference<? extends V> ref = _collected.poll(); ref != null;
+             ref = _collected.poll()) {
+            Weak<V> weak = (Weak<V>) ref;
+            if (_weak.get(weak._id) == weak) {
+                _weak.remove(weak._id);
+            }
+        }
+    }
+
+    /** A strongly held object and its weight. */
+    private static class Strong<V> {
+
+        /** The object. */
+        private final V _value;
+
+        /** Its weight. */
+        private final long _weight;
+
+        /** An entry for VALUE, of weight WEIGHT. */
+        Strong(V value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+    }
+
+    /** A weakly held object, which remembers its key. */
+    private static class Weak<V> extends WeakReference<V> {
+
+        /** The key of the object. */
+        private final String _id;
+
+        /** A weak reference to VALUE, cached under ID, that is enqueued on
+         *  QUEUE once VALUE is collected. */
+        Weak(String id, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            _id = id;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** The SHA-1 of an object, held as its 20 bytes in two longs and an
+ *  int rather than as 40 hex digits, so that it takes about a third of
+ *  the heap of the String, hashes without being scanned, and compares
+ *  in three steps.  ObjectIds order as their bytes do, unsigned, which
+ *  is also the order of their hex forms.  They are immutable.
+ *  @author Akshay Patel */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Number of bytes in an ObjectId. */
+    static final int BYTES = 20;
+
+    /** The ObjectId whose bytes are all 0, which no object has. */
+    static final ObjectId ZERO = new ObjectId(0, 0, 0);
+
+    /** Bytes 0 through 7, big-endian. */
+    private final long _high;
+
+    /** Bytes 8 through 15, big-endian. */
+    private final long _middle;
+
+    /** Bytes 16 through 19, big-endian. */
+    private final int _low;
+
+    /** The ObjectId whose bytes are those of HIGH, MIDDLE and LOW, in
+     *  big-endian order. */
+    private ObjectId(long high, long middle, int low) {
+        _high = high;
+        _middle = middle;
+        _low = low;
+    }
+
+    /** Returns the ObjectId denoted by the 40 hex digits HEX, in either
+     *  case.  Throws an IllegalArgumentException if HEX is not such a
+     *  numeral. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != 2 * BYTES) {
+            throw new IllegalArgumentException("bad object id: " + hex);
+        }
+        return new ObjectId(hexLong(hex, 0, 16), hexLong(hex, 16, 16),
+                (int) hexLong(hex, 32, 8));
+    }
+
+    /** Returns the ObjectId in bytes AT .. AT+19 of DATA. */
+    static ObjectId fromBytes(byte[] data, int at) {
+        return fromBuffer(ByteBuffer.wrap(data), at);
+    }
+
+    /** Returns the ObjectId in bytes AT .. AT+19 of BUFFER, which must
+     *  be big-endian. */
+    static ObjectId fromBuffer(ByteBuffer buffer, int at) {
+        return new ObjectId(buffer.getLong(at), buffer.getLong(at + 8),
+                buffer.getInt(at + 16));
+    }
+
+    /** Returns the value of the DIGITS hex digits of HEX from AT. */
+    private static long hexLong(String hex, int at, int digits) {
+        long result = 0;
+        for (int i = at; i < at + digits; i += 1) {
+            int digit = Utils.hexValue(hex.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("bad object id: " + hex);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /** Returns the first byte of this ObjectId, from 0 to 255. */
+    int firstByte() {
+        return (int) (_high >>> 56);
+    }
+
+    /** Returns the 20 bytes of this ObjectId. */
+    byte[] toBytes() {
+        byte[] result = new byte[BYTES];
+        ByteBuffer.wrap(result).putLong(_high).putLong(_middle)
+            .putInt(_low);
+        return result;
+    }
+
+    /** Puts the 20 bytes of this ObjectId into BUFFER at its
+     *  position. */
+    void put(ByteBuffer buffer) {
+        buffer.putLong(_high).putLong(_middle).putInt(_low);
+    }
+
+    /** Returns true iff bytes AT .. AT+19 of BUFFER, which must be
+     *  big-endian, are this ObjectId. */
+    boolean matches(ByteBuffer buffer, int at) {
+        return buffer.getLong(at) == _high
+            && buffer.getLong(at + 8) == _middle
+            && buffer.getInt(at + 16) == _low;
+    }
+
+    /** Returns a negative number, 0 or a positive number as this
+     *  ObjectId orders before, with or after the one in bytes AT ..
+     *  AT+19 of BUFFER. */
+    int compareTo(ByteBuffer buffer, int at) {
+        int c = Long.compareUnsigned(_high, buffer.getLong(at));
+        if (c == 0) {
+            c = Long.compareUnsigned(_middle, buffer.getLong(at + 8));
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_low, buffer.getInt(at + 16));
+        }
+        return c;
+    }
+
+    /** Returns this ObjectId as 40 lower-case hex digits. */
+    String toHex() {
+        byte[] result = new byte[2 * BYTES];
+        putHex(_high, result, 0, 16);
+        putHex(_middle, result, 16, 16);
+        putHex(_low, result, 32, 8);
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Writes the low DIGITS hex digits of VALUE into RESULT at AT. */
+    private static void putHex(long value, byte[] result, int at,
+                               int digits) {
+        for (int i = at + digits - 1; i >= at; i -= 1) {
+            result[i] = Utils.HEX_DIGITS[(int) value & 0xf];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_high, other._high);
+        if (c == 0) {
+            c = Long.compareUnsigned(_middle, other._middle);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_low, other._low);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _high == other._high && _middle == other._middle
+            && _low == other._low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_high >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A map from ObjectIds to values, by open addressing with linear
+ *  probing in a table kept at most half full.  SHA-1s are uniformly
+ *  distributed, so an ObjectId's own hash code places it, and a lookup
+ *  usually touches one slot, with no entry objects to allocate or
+ *  chase as a HashMap has.  Keys cannot be removed; null values may not
+ *  be stored.
+ *  @author Akshay Patel */
+class ObjectIdMap<V> {
+
+    /** Number of slots in a new table. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Keys, by slot, null in empty slots. */
+    private ObjectId[] _keys;
+
+    /** Values, by slot. */
+    private Object[] _values;
+
+    /** Number of keys. */
+    private int _size;
+
+    /** An empty map. */
+    ObjectIdMap() {
+        this(0);
+    }
+
+    /** An empty map with room for EXPECTED keys before it grows. */
+    ObjectIdMap(int expected) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * expected) {
+            capacity *= 2;
+        }
+        _keys = new ObjectId[capacity];
+        _values = new Object[capacity];
+    }
+
+    /** Returns the number of keys. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the value of KEY, or null if it has none. */
+    @SuppressWarnings("unchecked")
+    V get(ObjectId key) {
+        int slot = slot(key);
+        return _keys[slot] == null ? null : (V) _values[slot];
+    }
+
+    /** Returns true iff KEY has a value. */
+    boolean containsKey(ObjectId key) {
+        return _keys[slot(key)] != null;
+    }
+
+    /** Makes VALUE, which must not be null, the value of KEY.
+     *  @return the previous value of KEY, or null. */
+    @SuppressWarnings("unchecked")
+    V put(ObjectId key, V value) {
+        int slot = slot(key);
+        V old = (V) _values[slot];
+        if (_keys[slot] == null) {
+            if (2 * (_size + 1) > _keys.length) {
+                grow();
+                slot = slot(key);
+            }
+            _keys[slot] = key;
+            _size += 1;
+        }
+        _values[slot] = value;
+        return old;
+    }
+
+    /** Returns the keys, in order. */
+    ObjectId[] sortedKeys() {
+        ObjectId[] result = new ObjectId[_size];
+        int i = 0;
+        for (ObjectId key : _keys) {
+            if (key != null) {
+                result[i] = key;
+                i += 1;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Returns the slot holding KEY, or the empty slot where it would
+     *  go. */
+    private int slot(ObjectId key) {
+        int mask = _keys.length - 1;
+        int slot = key.hashCode() & mask;
+        while (_keys[slot] != null && !_keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Doubles the table. */
+    private void grow() {
+        ObjectId[] keys = _keys;
+        Object[] values = _values;
+        _keys = new ObjectId[2 * keys.length];
+        _values = new Object[2 * keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            if (keys[i] != null) {
+                int slot = slot(keys[i]);
+                _keys[slot] = keys[i];
+                _values[slot] = values[i];
+            }
+        }
+    }
+}
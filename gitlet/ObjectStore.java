@@ -0,0 +1,784 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A content-addressed store of compressed objects.  Each object is
+ *  written as a header of the form "TYPE LENGTH\0" followed by its
+ *  contents, deflated, in a file named by the last 38 hex digits of
+ *  its SHA-1 inside a subdirectory named by the first two, so that no
+ *  single directory grows too large to list quickly.  Files are hashed,
+ *  stored and restored through a fixed-size buffer, so their size is
+ *  not limited by the heap.  Repacking moves all objects into a Pack
+ *  in the "pack" subdirectory; objects are looked up there whenever
+ *  they are not found loose.  New objects are not written loose but
+ *  appended to a batch, a pack in a temporary file that the Journal
+ *  publishes when the command that wrote them finishes, so that they
+ *  reach the disk with a single force; the small packs so published are
+ *  combined once there are more than MAX_PACKS.
+ *  @author Akshay Patel */
+class ObjectStore {
+
+    /** Number of hex digits in the name of a fan-out directory. */
+    static final int FAN_OUT = 2;
+
+    /** Size of the buffer that streamed files pass through. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of preceding objects each object is tried as a Delta
+     *  against when repacking. */
+    static final int WINDOW = 10;
+
+    /** Longest chain of deltas allowed in a pack. */
+    static final int MAX_DEPTH = 10;
+
+    /** Largest object considered for delta compression. */
+    static final long DELTA_LIMIT = 1 << 24;
+
+    /** Largest total size of the objects held in memory once read. */
+    static final long CACHE_LIMIT = 1 << 25;
+
+    /** Largest object held in memory once read; larger ones are only
+     *  shared while in use. */
+    static final int CACHED_OBJECT_LIMIT = 1 << 20;
+
+    /** Largest file compressed in memory when it is stored. */
+    static final long BUFFERED_LIMIT = 1 << 20;
+
+    /** Largest number of packs kept before all but the largest are
+     *  combined into one. */
+    static final int MAX_PACKS = 16;
+
+    /** Root folder of this store. */
+    private final File _root;
+
+    /** Packs of this store, read on first use. */
+    private List<Pack> _packs;
+
+    /** Modification time of the pack folder when _packs was read. */
+    private long _packsModified;
+
+    /** Contents of recently read objects, by SHA-1. */
+    private final ObjectCache<byte[]> _cache;
+
+    /** Sorted SHA-1s of the objects, for resolving abbreviations. */
+    private final IdIndex _ids;
+
+    /** Objects written by the current command and not yet published,
+     *  or null if there are none. */
+    private Pack.Writer _batch;
+
+    /** A store kept under ROOT. */
+    ObjectStore(File root) {
+        this(root, root.getName());
+    }
+
+    /** A store kept under ROOT whose cache is traced as NAME. */
+    ObjectStore(File root, String name) {
+        _root = root;
+        _ids = new IdIndex(Utils.join(root, "ids"),
+                Utils.join(root, "ids.journal"), this::list);
+        _cache = Trace.watch(name, new ObjectCache<>(CACHE_LIMIT,
+                CACHED_OBJECT_LIMIT, b -> b.length));
+    }
+
+    /** Returns the root folder of this store. */
+    File getRoot() {
+        return _root;
+    }
+
+    /** Returns the header that precedes an object of type TYPE whose
+     *  contents are LENGTH bytes long. */
+    static byte[] header(String type, long length) {
+        return (type + " " + length + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the SHA-1 an object of type TYPE with contents DATA
+     *  is stored under. */
+    static String hash(String type, byte[] data) {
+        return Utils.sha1(header(type, data.length), data);
+    }
+
+    /** Returns the SHA-1 the contents of FILE would be stored under as
+     *  an object of type TYPE.  A file of up to BUFFERED_LIMIT bytes is
+     *  read whole, and its header takes the length of what was read; a
+     *  larger one is read a buffer at a time, and refused if its length
+     *  changes while it is read, so that the header always matches the
+     *  contents hashed. */
+    static String hash(String type, File file) {
+        long start = Trace.start();
+        long length = file.length();
+        String result;
+        try {
+            if (length <= BUFFERED_LIMIT) {
+                byte[] data = Files.readAllBytes(file.toPath());
+                length = data.length;
+                result = hash(type, data);
+            } else {
+                MessageDigest md = Utils.sha1Digest();
+                md.update(header(type, length));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long read = 0;
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    for (int n = in.read(buffer); n != -1;
+                         n = in.read(buffer)) {
+                        md.update(buffer, 0, n);
+                        read += n;
+                    }
+                }
+                if (read != length) {
+                    throw changed(file);
+                }
+                result = Utils.toHex(md.digest());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("ObjectStore.hash", start, length);
+        return result;
+    }
+
+    /** Returns the file that holds (or would hold) object ID. */
+    File file(String id) {
+        return Utils.join(_root, id.substring(0, FAN_OUT),
+                id.substring(FAN_OUT));
+    }
+
+    /** Returns the folder holding the packs of this store. */
+    File packFolder() {
+        return Utils.join(_root, "pack");
+    }
+
+    /** Returns the packs of this store, reading them again if the pack
+     *  folder has changed since they were read. */
+    synchronized List<Pack> packs() {
+        long modified = packFolder().lastModified();
+        if (_packs == null || modified != _packsModified) {
+            _packsModified = modified;
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(packFolder());
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        _packs.add(new Pack(Utils.join(packFolder(), name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Returns the pack holding object ID, or null if there is none. */
+    private Pack packOf(String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the SHA-1s of the objects in this store that start with
+     *  PREFIX, in order, or none if PREFIX has fewer than
+     *  IdIndex.MIN_PREFIX digits or is not hex. */
+    List<String> resolve(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (!IdIndex.isPrefix(prefix)) {
+            return result;
+        }
+        for (String id : _ids.resolve(prefix)) {
+            if (contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff object ID is in this store, loose, packed or
+     *  in the batch. */
+    boolean contains(String id) {
+        return id.length() == Utils.UID_LENGTH
+            && (file(id).isFile() || packOf(id) != null
+                || batchOf(id) != null);
+    }
+
+    /** Stores DATA as an object of type TYPE, unless an identical
+     *  object is already present.
+     *  @return the SHA-1 of the object. */
+    String put(String type, byte[] data) {
+        String id = hash(type, data);
+        put(id, type, data);
+        return id;
+    }
+
+    /** Stores DATA as an object of type TYPE under the name ID, unless
+     *  ID is already present.  Used for objects, such as commits, whose
+     *  names are not the hash of their stored form. */
+    void put(String id, String type, byte[] data) {
+        if (!contains(id)) {
+            long start = Trace.start();
+            Pack.Writer batch = batch();
+            synchronized (batch) {
+                if (!contains(id)) {
+                    _ids.add(id);
+                    batch.writeFull(id, type, data.length,
+                            new ByteArrayInputStream(data));
+                }
+            }
+            Trace.end("ObjectStore.put", start, data.length);
+        }
+    }
+
+    /** Replaces the contents of object ID, of type TYPE, with DATA, in
+     *  a loose object that takes precedence over any packed copy.  Used
+     *  only to rewrite objects, such as commits, whose names are not the
+     *  hash of their stored form, in a new format. */
+    void replace(String id, String type, byte[] data) {
+        writeLoose(id, type, data);
+        _cache.put(id, data);
+    }
+
+    /** Writes DATA as loose object ID, of type TYPE, through a temporary
+     *  file that is renamed into place. */
+    private void writeLoose(String id, String type, byte[] data) {
+        long start = Trace.start();
+        File file = file(id);
+        file.getParentFile().mkdir();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(bytes, deflater)) {
+            out.write(header(type, data.length));
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        File temp = tempFile();
+        Utils.writeContents(temp, bytes.toByteArray());
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.written(file);
+        Trace.end("ObjectStore.writeLoose", start, data.length);
+    }
+
+    /** Stores the contents of FILE as an object of type TYPE, hashing
+     *  and compressing it in a single pass.  A file of up to
+     *  BUFFERED_LIMIT bytes is compressed in memory, so that several
+     *  threads may store files at once, and then added to the batch;
+     *  a larger one is compressed straight into the batch, and the entry
+     *  dropped again if the object turns out to be present already.
+     *  @return the SHA-1 of the object. */
+    String putFile(String type, File file) {
+        long start = Trace.start();
+        long length = file.length();
+        MessageDigest md = Utils.sha1Digest();
+        md.update(header(type, length));
+        Pack.Writer batch = batch();
+        String id;
+        try (InputStream in = new DigestInputStream(
+                Files.newInputStream(file.toPath()), md)) {
+            if (length <= BUFFERED_LIMIT) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream out =
+                         new DeflaterOutputStream(bytes, deflater)) {
+                    if (in.transferTo(out) != length) {
+                        throw changed(file);
+                    }
+                } finally {
+                    deflater.end();
+                }
+                id = Utils.toHex(md.digest());
+                synchronized (batch) {
+                    if (!contains(id)) {
+                        _ids.add(id);
+                        batch.writeDeflated(id, type, length,
+                                bytes.toByteArray());
+                    }
+                }
+            } else {
+                synchronized (batch) {
+                    long offset = batch.write(type, length, in);
+                    if (offset < 0) {
+                        throw changed(file);
+                    }
+                    id = Utils.toHex(md.digest());
+                    if (contains(id)) {
+                        batch.rewind(offset);
+                    } else {
+                        _ids.add(id);
+                        batch.index(id, offset);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("ObjectStore.putFile", start, length);
+        return id;
+    }
+
+    /** Returns the error reported when FILE changes while it is being
+     *  hashed or stored. */
+    private static GitletException changed(File file) {
+        return Utils.error("%s changed while it was being read.",
+                file.getName());
+    }
+
+    /** Returns the batch of objects written by the current command,
+     *  starting one if there is none. */
+    private synchronized Pack.Writer batch() {
+        if (_batch == null) {
+            _batch = new Pack.Writer(tempFile());
+            Journal.batch(this);
+        }
+        return _batch;
+    }
+
+    /** Returns the batch, or null if there is none.  The batch is
+     *  used only once this store's lock is released, so that no thread
+     *  holding that lock waits for a batch's. */
+    private synchronized Pack.Writer currentBatch() {
+        return _batch;
+    }
+
+    /** Returns the batch if it holds object ID, or else null. */
+    private Pack.Writer batchOf(String id) {
+        Pack.Writer batch = currentBatch();
+        return batch != null && batch.contains(id) ? batch : null;
+    }
+
+    /** Finishes the batch, forcing it to the disk, and moves it into the
+     *  pack folder, whose own entries the caller must force.  Combines
+     *  the packs if there are then more than MAX_PACKS. */
+    void publish() {
+        Pack.Writer batch;
+        synchronized (this) {
+            batch = _batch;
+            _batch = null;
+        }
+        if (batch == null) {
+            return;
+        } else if (batch.count() == 0) {
+            batch.abort();
+            return;
+        }
+        long start = Trace.start();
+        batch.finish(packFolder());
+        synchronized (this) {
+            _packs = null;
+        }
+        Trace.end("ObjectStore.publish", start, batch.count());
+        if (packs().size() > MAX_PACKS) {
+            combine();
+        }
+    }
+
+    /** Discards the batch. */
+    void discard() {
+        Pack.Writer batch;
+        synchronized (this) {
+            batch = _batch;
+            _batch = null;
+        }
+        if (batch != null) {
+            batch.abort();
+        }
+    }
+
+    /** Copies every object of all but the largest pack into one new pack,
+     *  and then deletes the packs copied.  Objects stored as deltas are
+     *  copied whole; gc compresses them again. */
+    private void combine() {
+        long start = Trace.start();
+        List<Pack> packs = new ArrayList<>(packs());
+        packs.sort(Comparator.comparingLong(p -> p.getPackFile().length()));
+        packs.remove(packs.size() - 1);
+        Pack.Writer writer = new Pack.Writer(tempFile());
+        for (Pack pack : packs) {
+            for (String id : pack.ids()) {
+                if (!writer.contains(id)) {
+                    String type = pack.type(id);
+                    InputStream in = pack.open(id, type);
+                    writer.writeFull(id, type, pack.size(id), in);
+                    close(in);
+                }
+            }
+        }
+        Pack combined = writer.finish(packFolder());
+        Journal.force(packFolder());
+        try {
+            for (Pack pack : packs) {
+                if (!pack.getPackFile().equals(combined.getPackFile())) {
+                    Files.deleteIfExists(pack.getIndexFile().toPath());
+                    Files.deleteIfExists(pack.getPackFile().toPath());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synchronized (this) {
+            _packs = null;
+        }
+        Trace.end("ObjectStore.combine", start, packs.size());
+    }
+
+    /** Returns the contents of object ID, which must have type TYPE,
+     *  and which the caller must not modify.  Contents are cached, so
+     *  reading an object again is usually free.  Throws a
+     *  GitletException if the object is missing or is of some other
+     *  type. */
+    byte[] get(String id, String type) {
+        byte[] data = _cache.get(id);
+        if (data != null) {
+            return data;
+        }
+        long start = Trace.start();
+        try (InputStream in = open(id, type)) {
+            data = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("ObjectStore.get", start, data.length);
+        _cache.put(id, data);
+        return data;
+    }
+
+    /** Returns the cache of object contents. */
+    ObjectCache<byte[]> cache() {
+        return _cache;
+    }
+
+    /** Writes the contents of object ID, which must have type TYPE, to
+     *  DEST, decompressing it a buffer at a time. */
+    void copyTo(String id, String type, File dest) {
+        long start = Trace.start();
+        try (InputStream in = open(id, type)) {
+            long length = Files.copy(in, dest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Trace.end("ObjectStore.copyTo", start, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of object ID, positioned just
+     *  past its header.  Throws a GitletException if the object is
+     *  missing or is not of type TYPE. */
+    InputStream open(String id, String type) {
+        if (!file(id).isFile()) {
+            Pack pack = packOf(id);
+            if (pack != null) {
+                return pack.open(id, type);
+            }
+            Pack.Writer batch = batchOf(id);
+            if (batch == null) {
+                throw Utils.error("No object %s in %s.", id, _root.getName());
+            }
+            return batch.open(id, type);
+        }
+        InputStream in = openLoose(id);
+        if (!readHeader(in, id)[0].equals(type)) {
+            close(in);
+            throw Utils.error("Object %s is not a valid %s.", id, type);
+        }
+        return in;
+    }
+
+    /** Returns the type and the length, as a decimal numeral, of object
+     *  ID. */
+    String[] info(String id) {
+        if (!file(id).isFile()) {
+            Pack pack = packOf(id);
+            if (pack != null) {
+                return new String[] {
+                    pack.type(id), Long.toString(pack.size(id)) };
+            }
+            Pack.Writer batch = batchOf(id);
+            if (batch == null) {
+                throw Utils.error("No object %s in %s.", id, _root.getName());
+            }
+            return new String[] {
+                batch.type(id), Long.toString(batch.size(id)) };
+        }
+        InputStream in = openLoose(id);
+        String[] header = readHeader(in, id);
+        close(in);
+        return header;
+    }
+
+    /** Returns an inflating stream over loose object ID. */
+    private InputStream openLoose(String id) {
+        try {
+            return new InflaterInputStream(new BufferedInputStream(
+                    Files.newInputStream(file(id).toPath()), BUFFER_SIZE));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the header of object ID from IN.
+     *  @return the type and length fields of the header. */
+    private static String[] readHeader(InputStream in, String id) {
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            for (int c = in.read(); c != 0; c = in.read()) {
+                if (c == -1) {
+                    close(in);
+                    throw Utils.error("Object %s has no header.", id);
+                }
+                header.write(c);
+            }
+            String[] fields = header.toString(StandardCharsets.UTF_8)
+                    .split(" ");
+            if (fields.length != 2) {
+                close(in);
+                throw Utils.error("Object %s has a bad header.", id);
+            }
+            return fields;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Closes IN. */
+    private static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a new, empty temporary file in this store's root. */
+    private File tempFile() {
+        try {
+            _root.mkdir();
+            return Files.createTempFile(_root.toPath(), "tmp", null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA-1s of every object in this store, loose, packed
+     *  or in the batch, in lexicographic order. */
+    List<String> list() {
+        TreeSet<String> result = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids());
+        }
+        Pack.Writer batch = currentBatch();
+        if (batch != null) {
+            result.addAll(batch.ids());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the SHA-1s of the loose objects in this store, in
+     *  lexicographic order. */
+    List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        String[] dirs = _root.list();
+        if (dirs == null) {
+            return result;
+        }
+        Arrays.sort(dirs);
+        for (String dir : dirs) {
+            if (dir.length() != FAN_OUT) {
+                continue;
+            }
+            List<String> names =
+                    Utils.plainFilenamesIn(Utils.join(_root, dir));
+            if (names != null) {
+                for (String name : names) {
+                    result.add(dir + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Copies the objects IDS, none of which this store holds, from
+     *  SOURCE into the batch, streaming each one across whole, so that
+     *  they are published as a single new pack; gc later stores them as
+     *  deltas. */
+    void copyFrom(ObjectStore source, List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long start = Trace.start();
+        long length = 0;
+        for (String id : ids) {
+            String[] info = source.info(id);
+            _ids.add(id);
+            InputStream in = source.open(id, info[0]);
+            batch().writeFull(id, info[0], Long.parseLong(info[1]), in);
+            close(in);
+            length += Long.parseLong(info[1]);
+        }
+        Trace.end("ObjectStore.copyFrom", start, length);
+    }
+
+    /** Moves every object of this store into a single new pack and then
+     *  deletes the loose objects and the old packs.  Each object is
+     *  stored as a Delta against one of the WINDOW objects before it if
+     *  that takes less than half its size.  Objects are ordered by type,
+     *  then by their entry in HINTS (normally a file name that holds
+     *  them), then by decreasing size, so that versions of one file are
+     *  near one another.  Only the objects in the window are held in
+     *  memory.  The new pack is forced into place before anything is
+     *  deleted. */
+    void repack(Map<String, String> hints) {
+        List<Pack> oldPacks = new ArrayList<>(packs());
+        List<String> loose = looseIds();
+        if (loose.isEmpty() && oldPacks.size() <= 1) {
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (String id : list()) {
+            String[] info = info(id);
+            candidates.add(new Candidate(id, info[0],
+                    hints.getOrDefault(id, ""), Long.parseLong(info[1])));
+        }
+        candidates.sort(Comparator.comparing((Candidate c) -> c._type)
+                .thenComparing(c -> c._hint)
+                .thenComparing(c -> -c._size));
+        Pack.Writer writer = new Pack.Writer(tempFile());
+        ArrayDeque<Candidate> window = new ArrayDeque<>();
+        for (int i = 0; i < candidates.size(); i += 1) {
+            Candidate item = candidates.set(i, null);
+            if (item._size > DELTA_LIMIT) {
+                InputStream in = open(item._id, item._type);
+                writer.writeFull(item._id, item._type, item._size, in);
+                close(in);
+                continue;
+            }
+            item._data = get(item._id, item._type);
+            Candidate base = null;
+            byte[] best = null;
+            for (Candidate other : window) {
+                if (other._type.equals(item._type)
+                        && other._depth < MAX_DEPTH) {
+                    byte[] delta = other.delta().encode(item._data);
+                    if (delta.length < item._data.length / 2
+                            && (best == null || delta.length < best.length)) {
+                        base = other;
+                        best = delta;
+                    }
+                }
+            }
+            if (base == null) {
+                item._offset = writer.writeFull(item._id, item._type,
+                        item._size, new ByteArrayInputStream(item._data));
+            } else {
+                item._offset = writer.writeDelta(item._id, item._type,
+                        item._size, base._offset, best);
+                item._depth = base._depth + 1;
+            }
+            window.addLast(item);
+            if (window.size() > WINDOW) {
+                window.removeFirst().release();
+            }
+        }
+        window.clear();
+        Pack pack = writer.finish(packFolder());
+        Journal.force(packFolder());
+        try {
+            for (Pack old : oldPacks) {
+                if (!old.getPackFile().equals(pack.getPackFile())) {
+                    Files.deleteIfExists(old.getIndexFile().toPath());
+                    Files.deleteIfExists(old.getPackFile().toPath());
+                }
+            }
+            for (String id : loose) {
+                Files.deleteIfExists(file(id).toPath());
+                file(id).getParentFile().delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synchronized (this) {
+            _packs = null;
+        }
+    }
+
+    /** An object being considered for delta compression while
+     *  repacking. */
+    private static class Candidate {
+
+        /** SHA-1 of the object. */
+        private final String _id;
+
+        /** Type of the object. */
+        private final String _type;
+
+        /** Sort hint for the object. */
+        private final String _hint;
+
+        /** Length of the object. */
+        private final long _size;
+
+        /** Contents of the object, once read. */
+        private byte[] _data;
+
+        /** Offset of the object's entry in the new pack. */
+        private long _offset;
+
+        /** Number of deltas that must be applied to rebuild the
+         *  object. */
+        private int _depth;
+
+        /** Index of _data for computing deltas against it. */
+        private Delta _delta;
+
+        /** An object ID of type TYPE and length SIZE, sorted by HINT. */
+        Candidate(String id, String type, String hint, long size) {
+            _id = id;
+            _type = type;
+            _hint = hint;
+            _size = size;
+        }
+
+        /** Returns an index of this object for computing deltas. */
+        Delta delta() {
+            if (_delta == null) {
+                _delta = new Delta(_data);
+            }
+            return _delta;
+        }
+
+        /** Drops the contents of this object and its index, once it has
+         *  left the window. */
+        void release() {
+            _data = null;
+            _delta = null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the content-addressed ObjectStore.
+ *  @author Akshay Patel */
+public class ObjectStoreTest {
+
+    /** The store under test, kept in Main.CWD. */
+    private ObjectStore _store;
+
+    /** Empties Main.CWD and makes a store there. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.clearCwd();
+        _store = new ObjectStore(Utils.join(Main.CWD, "objects"));
+    }
+
+    /** Objects are named by the hash of their type and contents, are
+     *  stored once however often they are put, and read back the same
+     *  from the batch, once published, and from a new store. */
+    @Test
+    public void putAndGet() {
+        byte[] data = "contents\n".getBytes(StandardCharsets.UTF_8);
+        String id = _store.put(Blob.TYPE, data);
+        assertEquals(ObjectStore.hash(Blob.TYPE, data), id);
+        assertNotEquals(id, ObjectStore.hash(Tree.TYPE, data));
+        assertEquals(id, _store.put(Blob.TYPE, data.clone()));
+        assertEquals(Arrays.asList(id), _store.list());
+        assertArrayEquals(data, _store.get(id, Blob.TYPE));
+        Journal.flush();
+        assertTrue(_store.contains(id));
+        ObjectStore reopened = new ObjectStore(_store.getRoot());
+        assertArrayEquals(data, reopened.get(id, Blob.TYPE));
+        assertEquals(Arrays.asList(Blob.TYPE, "9"),
+                Arrays.asList(reopened.info(id)));
+    }
+
+    /** Files are stored under the hash of their contents, small ones
+     *  and ones too large to compress in memory alike. */
+    @Test
+    public void putFile() throws IOException {
+        Random random = new Random(2);
+        for (int length : new int[] { 0, 100, 3 << 20 }) {
+            byte[] data = PackTest.randomBytes(random, length);
+            File file = Utils.join(Main.CWD, "file" + length);
+            Utils.writeContents(file, data);
+            String id = _store.putFile(Blob.TYPE, file);
+            assertEquals(ObjectStore.hash(Blob.TYPE, data), id);
+            assertEquals(ObjectStore.hash(Blob.TYPE, file), id);
+            assertEquals(id, _store.putFile(Blob.TYPE, file));
+            Journal.flush();
+            assertArrayEquals(data,
+                    new ObjectStore(_store.getRoot()).get(id, Blob.TYPE));
+        }
+        assertEquals(3, _store.list().size());
+    }
+
+    /** Reading a missing object, or one of another type, is refused. */
+    @Test
+    public void refusals() {
+        String id = _store.put(Blob.TYPE, new byte[] { 1 });
+        Journal.flush();
+        try {
+            _store.get(Utils.sha1("missing"), Blob.TYPE);
+            fail("A missing object was read.");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("No object"));
+        }
+        try {
+            new ObjectStore(_store.getRoot()).get(id, Commit.TYPE);
+            fail("An object of another type was read.");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().endsWith(
+                    "is not a valid commit."));
+        }
+    }
+
+    /** Abbreviated SHA-1s resolve to every object they start, and ones
+     *  too short or not hex resolve to none. */
+    @Test
+    public void resolve() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            ids.add(_store.put(Blob.TYPE,
+                    Integer.toString(i).getBytes(StandardCharsets.UTF_8)));
+        }
+        Journal.flush();
+        for (String id : ids) {
+            assertEquals(Arrays.asList(id), _store.resolve(id));
+            List<String> matches = _store.resolve(
+                    id.substring(0, IdIndex.MIN_PREFIX));
+            assertTrue(matches.contains(id));
+            for (String match : matches) {
+                assertTrue(match.startsWith(
+                        id.substring(0, IdIndex.MIN_PREFIX)));
+            }
+        }
+        String id = ids.get(0);
+        assertEquals(List.of(),
+                _store.resolve(id.substring(0, IdIndex.MIN_PREFIX - 1)));
+        assertEquals(List.of(), _store.resolve("xyz" + id.substring(3)));
+        assertEquals(List.of(), _store.resolve(Utils.sha1("missing")));
+    }
+
+    /** A SHA-1 journaled after another store has merged the journal into
+     *  the index is still resolved, rather than lost to the deleted
+     *  journal. */
+    @Test
+    public void journalAfterRebuild() {
+        String first = _store.put(Blob.TYPE,
+                "first".getBytes(StandardCharsets.UTF_8));
+        Journal.flush();
+        try {
+            RepositoryLock.acquire(Main.CWD, false);
+            assertEquals(Arrays.asList(first),
+                    new ObjectStore(_store.getRoot()).resolve(first));
+        } finally {
+            RepositoryLock.releaseAll();
+        }
+        String second = _store.put(Blob.TYPE,
+                "second".getBytes(StandardCharsets.UTF_8));
+        Journal.flush();
+        assertEquals(Arrays.asList(second),
+                new ObjectStore(_store.getRoot()).resolve(second));
+    }
+}
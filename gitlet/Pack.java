@@ -0,0 +1,580 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A pack: one file holding many objects of an ObjectStore, with an
+ *  index file for random access.  Each entry of a pack file is either
+ *  a whole object or a Delta against an earlier entry of the same
+ *  pack, and in both cases its data is deflated.  The index holds a
+ *  256-entry fan-out table followed by the sorted SHA-1s of the
+ *  objects and the offsets of their entries, and is memory-mapped and
+ *  binary-searched.
+ *  @author Akshay Patel */
+class Pack {
+
+    /** First bytes of a pack file. */
+    static final int PACK_MAGIC = 0x47504b31;
+
+    /** First bytes of a pack index file. */
+    static final int INDEX_MAGIC = 0x47494431;
+
+    /** Kind of an entry holding a whole object. */
+    static final int FULL = 0;
+
+    /** Kind of an entry holding a Delta. */
+    static final int DELTA = 1;
+
+    /** Number of bytes in a SHA-1. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Width of an index record: a SHA-1 and an offset. */
+    private static final int RECORD = ID_BYTES + 8;
+
+    /** Position of the first record in an index file. */
+    private static final int RECORDS_START = 8 + 256 * 4;
+
+    /** The pack file. */
+    private final File _packFile;
+
+    /** The memory-mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** Number of objects in the pack. */
+    private final int _count;
+
+    /** The pack whose index is INDEXFILE. */
+    Pack(File indexFile) {
+        String name = indexFile.getName();
+        _packFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+            _index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != INDEX_MAGIC) {
+            throw Utils.error("%s is not a pack index.", name);
+        }
+        _count = _index.getInt(RECORDS_START - 4);
+    }
+
+    /** Returns the pack file. */
+    File getPackFile() {
+        return _packFile;
+    }
+
+    /** Returns the index file. */
+    File getIndexFile() {
+        String name = _packFile.getName();
+        return new File(_packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Returns the offset of the entry for object ID, or -1 if it is
+     *  not in this pack. */
+    long offset(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        ObjectId key = ObjectId.fromHex(id);
+        int first = key.firstByte();
+        int lo = first == 0 ? 0 : _index.getInt(8 + (first - 1) * 4);
+        int hi = _index.getInt(8 + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = key.compareTo(_index, RECORDS_START + mid * RECORD);
+            if (c == 0) {
+                return _index.getLong(RECORDS_START + mid * RECORD + ID_BYTES);
+            } else if (c > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff object ID is in this pack. */
+    boolean contains(String id) {
+        return offset(id) >= 0;
+    }
+
+    /** Returns the SHA-1s of the objects in this pack, in order. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(_count);
+        byte[] probe = new byte[ID_BYTES];
+        for (int i = 0; i < _count; i += 1) {
+            _index.get(RECORDS_START + i * RECORD, probe);
+            result.add(Utils.toHex(probe));
+        }
+        return result;
+    }
+
+    /** Returns the type of object ID, which must be in this pack. */
+    String type(String id) {
+        return typeAt(_packFile, offset(id));
+    }
+
+    /** Returns the length of object ID, which must be in this pack. */
+    long size(String id) {
+        return sizeAt(_packFile, offset(id));
+    }
+
+    /** Returns a stream over the contents of object ID, which must be in
+     *  this pack.  Whole objects are inflated as they are read; objects
+     *  stored as deltas are rebuilt in memory first.  Throws a
+     *  GitletException if the object is not of type TYPE. */
+    InputStream open(String id, String type) {
+        return openAt(_packFile, offset(id), id, type);
+    }
+
+    /** Returns the type of the object whose entry is at OFFSET in the
+     *  pack file PACK. */
+    private static String typeAt(File pack, long offset) {
+        try (DataInputStream in = entry(pack, offset)) {
+            in.readByte();
+            return in.readUTF();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the object whose entry is at OFFSET in the
+     *  pack file PACK. */
+    private static long sizeAt(File pack, long offset) {
+        try (DataInputStream in = entry(pack, offset)) {
+            in.readByte();
+            in.readUTF();
+            return in.readLong();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of object ID, whose entry is
+     *  at OFFSET in the pack file PACK.  Throws a GitletException if the
+     *  object is not of type TYPE. */
+    private static InputStream openAt(File pack, long offset, String id,
+                                      String type) {
+        DataInputStream in = entry(pack, offset);
+        try {
+            int kind = in.readByte();
+            if (!in.readUTF().equals(type)) {
+                in.close();
+                throw Utils.error("Object %s is not a valid %s.", id, type);
+            }
+            if (kind == FULL) {
+                in.readLong();
+                return new InflaterInputStream(in);
+            }
+            in.close();
+            return new ByteArrayInputStream(load(pack, offset));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the object whose entry is at OFFSET in
+     *  the pack file PACK, applying deltas as needed. */
+    private static byte[] load(File pack, long offset) {
+        try (DataInputStream in = entry(pack, offset)) {
+            int kind = in.readByte();
+            in.readUTF();
+            in.readLong();
+            long base = kind == FULL ? -1 : in.readLong();
+            byte[] data;
+            try (InputStream inflater = new InflaterInputStream(in)) {
+                data = inflater.readAllBytes();
+            }
+            return kind == FULL ? data : Delta.apply(load(pack, base), data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the pack file PACK positioned at OFFSET. */
+    private static DataInputStream entry(File pack, long offset) {
+        if (offset < 0) {
+            throw Utils.error("Object is not in %s.", pack.getName());
+        }
+        try {
+            FileChannel channel = FileChannel.open(pack.toPath());
+            channel.position(offset);
+            return new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel),
+                    ObjectStore.BUFFER_SIZE));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a new pack, entry by entry, into a temporary file.  The
+     *  entries written so far can be read back before the pack is
+     *  finished, and the last of them dropped.  A Writer may be shared
+     *  by several threads. */
+    static class Writer {
+
+        /** Temporary file receiving the pack. */
+        private final File _temp;
+
+        /** Channel open on _temp. */
+        private final FileChannel _channel;
+
+        /** Output to _temp. */
+        private final CountingOutputStream _out;
+
+        /** Offsets of the entries written so far, by SHA-1. */
+        private final ObjectIdMap<Long> _offsets = new ObjectIdMap<>();
+
+        /** A Writer that writes to TEMP. */
+        Writer(File temp) {
+            _temp = temp;
+            try {
+                _channel = FileChannel.open(temp.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                _out = new CountingOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(_channel),
+                        ObjectStore.BUFFER_SIZE));
+                new DataOutputStream(_out).writeInt(PACK_MAGIC);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the number of entries written so far. */
+        synchronized int count() {
+            return _offsets.size();
+        }
+
+        /** Returns the offset of the entry written for object ID, or -1
+         *  if there is none. */
+        synchronized long offset(String id) {
+            if (id.length() != Utils.UID_LENGTH) {
+                return -1;
+            }
+            Long offset = _offsets.get(ObjectId.fromHex(id));
+            return offset == null ? -1 : offset;
+        }
+
+        /** Returns true iff an entry has been written for object ID. */
+        boolean contains(String id) {
+            return offset(id) >= 0;
+        }
+
+        /** Returns the SHA-1s of the entries written so far, in
+         *  order. */
+        synchronized List<String> ids() {
+            List<String> result = new ArrayList<>(_offsets.size());
+            for (ObjectId id : _offsets.sortedKeys()) {
+                result.add(id.toHex());
+            }
+            return result;
+        }
+
+        /** Returns the type of object ID, which must have an entry. */
+        synchronized String type(String id) {
+            flush();
+            return typeAt(_temp, offset(id));
+        }
+
+        /** Returns the length of object ID, which must have an entry. */
+        synchronized long size(String id) {
+            flush();
+            return sizeAt(_temp, offset(id));
+        }
+
+        /** Returns a stream over the contents of object ID, which must
+         *  have an entry.  Throws a GitletException if the object is not
+         *  of type TYPE. */
+        synchronized InputStream open(String id, String type) {
+            flush();
+            return openAt(_temp, offset(id), id, type);
+        }
+
+        /** Writes object ID of type TYPE, whose LENGTH bytes of contents
+         *  are read from IN, as a whole entry.
+         *  @return the offset of the entry. */
+        synchronized long writeFull(String id, String type, long length,
+                                    InputStream in) {
+            long offset = write(type, length, in);
+            if (offset < 0) {
+                throw Utils.error("Object %s changed while it was being "
+                        + "packed.", id);
+            }
+            index(id, offset);
+            return offset;
+        }
+
+        /** Writes an object of type TYPE, whose LENGTH bytes of contents
+         *  are read from IN, as a whole entry that is not yet indexed, so
+         *  that it can be named once its SHA-1 is known.
+         *  @return the offset of the entry, or -1, having dropped the
+         *  entry, if IN did not hold LENGTH bytes. */
+        synchronized long write(String type, long length, InputStream in) {
+            long offset = _out.count();
+            try {
+                DataOutputStream data = new DataOutputStream(_out);
+                data.writeByte(FULL);
+                data.writeUTF(type);
+                data.writeLong(length);
+                if (deflate(in) != length) {
+                    rewind(offset);
+                    return -1;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return offset;
+        }
+
+        /** Writes object ID of type TYPE and length LENGTH, whose contents
+         *  have already been deflated into DEFLATED, as a whole entry.
+         *  @return the offset of the entry. */
+        synchronized long writeDeflated(String id, String type,
+                                        long length, byte[] deflated) {
+            long offset = _out.count();
+            try {
+                DataOutputStream data = new DataOutputStream(_out);
+                data.writeByte(FULL);
+                data.writeUTF(type);
+                data.writeLong(length);
+                data.write(deflated);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            index(id, offset);
+            return offset;
+        }
+
+        /** Names the entry at OFFSET, written by write, object ID. */
+        synchronized void index(String id, long offset) {
+            _offsets.put(ObjectId.fromHex(id), offset);
+        }
+
+        /** Drops the entry at OFFSET, which must be the last entry
+         *  written and must not have been indexed. */
+        synchronized void rewind(long offset) {
+            flush();
+            try {
+                _channel.truncate(offset);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _out.reset(offset);
+        }
+
+        /** Passes the entries written so far on to the file. */
+        private void flush() {
+            try {
+                _out.flush();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Closes and deletes the pack without finishing it. */
+        synchronized void abort() {
+            try {
+                _out.close();
+                Files.deleteIfExists(_temp.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Writes object ID of type TYPE, LENGTH bytes long, as DELTA
+         *  against the entry at BASE.
+         *  @return the offset of the entry. */
+        long writeDelta(String id, String type, long length, long base,
+                        byte[] delta) {
+            long offset = _out.count();
+            try {
+                DataOutputStream data = new DataOutputStream(_out);
+                data.writeByte(DELTA);
+                data.writeUTF(type);
+                data.writeLong(length);
+                data.writeLong(base);
+                deflate(new ByteArrayInputStream(delta));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _offsets.put(ObjectId.fromHex(id), offset);
+            return offset;
+        }
+
+        /** Writes the deflated contents of IN to the pack.
+         *  @return the number of bytes read from IN. */
+        private long deflate(InputStream in) throws IOException {
+            Deflater deflater = new Deflater();
+            try {
+                DeflaterOutputStream out = new DeflaterOutputStream(
+                        new NonClosingOutputStream(_out), deflater,
+                        ObjectStore.BUFFER_SIZE);
+                long count = in.transferTo(out);
+                out.close();
+                return count;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /** Finishes the pack and its index, forces both to the disk, and
+         *  moves them into DIR, the index last, so that a reader never
+         *  sees an index whose pack is incomplete, even after a crash,
+         *  once DIR has been forced too.
+         *  @return the new Pack. */
+        synchronized Pack finish(File dir) {
+            try {
+                _out.flush();
+                _channel.force(true);
+                _out.close();
+                ObjectId[] ids = _offsets.sortedKeys();
+                StringBuilder names = new StringBuilder();
+                for (ObjectId id : ids) {
+                    names.append(id.toHex());
+                }
+                String name = "pack-" + Utils.sha1(names.toString());
+                File pack = new File(dir, name + ".pack");
+                File index = new File(dir, name + ".idx");
+                File indexTemp = new File(_temp.getPath() + ".idx");
+                writeIndex(indexTemp, ids);
+                dir.mkdir();
+                Files.move(_temp.toPath(), pack.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.move(indexTemp.toPath(), index.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return new Pack(index);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Writes the index of the entries written so far, whose SHA-1s
+         *  are IDS in order, to FILE. */
+        private void writeIndex(File file, ObjectId[] ids)
+            throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORDS_START
+                    + _offsets.size() * RECORD);
+            buffer.putInt(INDEX_MAGIC);
+            buffer.putInt(1);
+            int[] fanOut = new int[256];
+            for (ObjectId id : ids) {
+                fanOut[id.firstByte()] += 1;
+            }
+            int total = 0;
+            for (int count : fanOut) {
+                total += count;
+                buffer.putInt(total);
+            }
+            for (ObjectId id : ids) {
+                id.put(buffer);
+                buffer.putLong(_offsets.get(id));
+            }
+            buffer.flip();
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+        }
+    }
+
+    /** An OutputStream that counts the bytes written through it. */
+    private static class CountingOutputStream extends OutputStream {
+
+        /** The stream written to. */
+        private final OutputStream _out;
+
+        /** Number of bytes written so far. */
+        private long _count;
+
+        /** A stream that counts the bytes it passes on to OUT. */
+        CountingOutputStream(OutputStream out) {
+            _out = out;
+        }
+
+        /** Returns the number of bytes written so far. */
+        long count() {
+            return _count;
+        }
+
+        /** Makes COUNT the number of bytes written so far. */
+        void reset(long count) {
+            _count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _out.write(b);
+            _count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _out.write(b, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+    }
+
+    /** An OutputStream that passes everything but close on to another,
+     *  so that finishing one entry's deflater does not close the pack. */
+    private static class NonClosingOutputStream extends OutputStream {
+
+        /** The stream written to. */
+        private final OutputStream _out;
+
+        /** A stream that writes to OUT. */
+        NonClosingOutputStream(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
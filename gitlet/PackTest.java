@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Deltas and of packs written by an ObjectStore.
+ *  @author Akshay Patel */
+public class PackTest {
+
+    /** Empties Main.CWD, where the stores under test are kept. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.clearCwd();
+    }
+
+    /** Returns LENGTH pseudo-random bytes drawn from RANDOM. */
+    static byte[] randomBytes(Random random, int length) {
+        byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Returns DATA with LENGTH bytes at AT replaced by INSERTED. */
+    static byte[] splice(byte[] data, int at, int length, byte[] inserted) {
+        byte[] result = new byte[data.length - length + inserted.length];
+        System.arraycopy(data, 0, result, 0, at);
+        System.arraycopy(inserted, 0, result, at, inserted.length);
+        System.arraycopy(data, at + length, result, at + inserted.length,
+                data.length - at - length);
+        return result;
+    }
+
+    /** Asserts that the delta of TARGET against BASE applies back to
+     *  TARGET, and returns its length. */
+    static int roundTrip(byte[] base, byte[] target) {
+        byte[] delta = new Delta(base).encode(target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta.length;
+    }
+
+    /** Deltas turn a base back into targets that share much, little or
+     *  none of it, and are small when much is shared. */
+    @Test
+    public void deltaRoundTrip() {
+        Random random = new Random(61);
+        byte[] base = randomBytes(random, 1 << 14);
+        byte[] edited = splice(splice(base, 100, 7, randomBytes(random, 30)),
+                9000, 500, new byte[0]);
+        assertTrue(roundTrip(base, edited) < edited.length / 10);
+        assertTrue(roundTrip(base, base) < base.length / 10);
+        roundTrip(base, Arrays.copyOfRange(base, 3, 5000));
+        roundTrip(base, randomBytes(random, 4000));
+        roundTrip(base, new byte[0]);
+        roundTrip(base, new byte[Delta.BLOCK - 1]);
+        roundTrip(new byte[0], edited);
+        roundTrip(new byte[0], new byte[0]);
+    }
+
+    /** Objects read back unchanged from published batches and from the
+     *  pack that repacking writes, most of them stored as deltas, and
+     *  repacking leaves a single pack. */
+    @Test
+    public void packRoundTrip() {
+        File root = Utils.join(Main.CWD, "objects");
+        ObjectStore store = new ObjectStore(root);
+        Random random = new Random(62);
+        byte[] version = randomBytes(random, 1 << 12);
+        List<byte[]> contents = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < 2 * ObjectStore.WINDOW; i += 1) {
+            version = splice(version, random.nextInt(version.length - 8),
+                    8, randomBytes(random, 16));
+            contents.add(version);
+            ids.add(store.put(Blob.TYPE, version));
+            total += version.length;
+            if (i + 1 == ObjectStore.WINDOW) {
+                Journal.flush();
+            }
+        }
+        Journal.flush();
+        assertEquals(2, store.packs().size());
+        assertContents(new ObjectStore(root), ids, contents);
+        store.repack(new HashMap<>());
+        ObjectStore repacked = new ObjectStore(root);
+        assertEquals(1, repacked.packs().size());
+        assertTrue(repacked.packs().get(0).getPackFile().length()
+                < total / 4);
+        assertContents(repacked, ids, contents);
+    }
+
+    /** Asserts that STORE holds each of IDS with the corresponding
+     *  CONTENTS. */
+    private static void assertContents(ObjectStore store, List<String> ids,
+                                       List<byte[]> contents) {
+        assertEquals(ids.size(), store.list().size());
+        for (int i = 0; i < ids.size(); i += 1) {
+            assertArrayEquals(contents.get(i),
+                    store.get(ids.get(i), Blob.TYPE));
+        }
+    }
+}
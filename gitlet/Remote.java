@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** Another Gitlet repository, on a local or mounted path, that branches
+ *  are fetched from and pushed to.  Each remote is a file in the remotes
+ *  folder, named for the remote, holding the path of the other
+ *  repository's .gitlet folder.  Both repositories are read and written
+ *  directly, so the two sides agree on what to send by looking objects
+ *  up in each other's stores: the commits are walked back from the head
+ *  being sent until they reach commits the receiver already has, and
+ *  the Trees of the new commits are walked down until they reach Trees
+ *  it already has.  Only the objects found missing are copied, each
+ *  store receiving them as a single new pack, so a sync costs time in
+ *  proportion to the new history rather than to the whole.  The other
+ *  repository's ref is changed through this one's Journal, after the
+ *  objects it names are published, and the other repository is locked
+ *  like this one, so that neither side sees the other half-changed.
+ *  @author Akshay Patel */
+class Remote {
+
+    /** Folder holding the remotes. */
+    static final File REMOTES_FOLDER =
+        Utils.join(Main.GITLET_FOLDER, "remotes");
+
+    /** Name of the remote. */
+    private final String _name;
+
+    /** The .gitlet folder of the remote repository. */
+    private final File _folder;
+
+    /** The remote's Commit store. */
+    private final ObjectStore _commits;
+
+    /** The remote's Blob store. */
+    private final ObjectStore _blobs;
+
+    /** The remote NAME, whose .gitlet folder is FOLDER. */
+    private Remote(String name, File folder) {
+        _name = name;
+        _folder = folder;
+        _commits = new ObjectStore(
+                new File(folder, Commit.COMMIT_FOLDER.getName()),
+                name + "/" + Commit.COMMIT_FOLDER.getName());
+        _blobs = new ObjectStore(
+                new File(folder, Blob.BLOB_FOLDER.getName()),
+                name + "/" + Blob.BLOB_FOLDER.getName());
+    }
+
+    /** Records a remote NAME whose .gitlet folder is at PATH, whose
+     *  names are separated by slashes.  A remote may not take the name
+     *  of a branch, as the branches fetched from it are kept in a folder
+     *  of its name beside the refs of branches. */
+    static void add(String name, String path) {
+        if (!WorkingTree.isBranchName(name)) {
+            throw new GitletException("Not a valid remote name.");
+        }
+        File file = Utils.join(REMOTES_FOLDER, name);
+        if (Journal.read(file) != null) {
+            throw new GitletException(
+                    "A remote with that name already exists.");
+        }
+        if (WorkingTree.exists(name)
+                || Utils.join(Main.REFS_FOLDER, name).isFile()) {
+            throw new GitletException(
+                    "A branch with that name already exists.");
+        }
+        Journal.update(file,
+                path.replace(Tree.SEPARATOR, File.separatorChar));
+    }
+
+    /** Returns true iff a remote named NAME is recorded. */
+    static boolean exists(String name) {
+        return WorkingTree.isBranchName(name)
+            && Journal.read(Utils.join(REMOTES_FOLDER, name)) != null;
+    }
+
+    /** Forgets the remote NAME, leaving the branches fetched from it. */
+    static void remove(String name) {
+        File file = Utils.join(REMOTES_FOLDER, name);
+        if (!WorkingTree.isBranchName(name) || Journal.read(file) == null) {
+            throw new GitletException(
+                    "A remote with that name does not exist.");
+        }
+        Journal.update(file, null);
+    }
+
+    /** Returns the remote NAME.  A relative path is taken relative to
+     *  the working directory.  Throws a GitletException if there is no
+     *  such remote or its repository is missing. */
+    static Remote open(String name) {
+        String path = !WorkingTree.isBranchName(name) ? null
+            : Journal.read(Utils.join(REMOTES_FOLDER, name));
+        if (path == null) {
+            throw new GitletException(
+                    "A remote with that name does not exist.");
+        }
+        File folder = new File(path);
+        if (!folder.isAbsolute()) {
+            folder = new File(Main.CWD, folder.getPath());
+        }
+        if (!Utils.join(folder, Commit.COMMIT_FOLDER.getName())
+                .isDirectory()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return new Remote(name, folder);
+    }
+
+    /** Returns the name of the local branch that BRANCH of this remote
+     *  is fetched into. */
+    String branchName(String branch) {
+        return _name + "/" + branch;
+    }
+
+    /** Copies the history of the remote's BRANCH that is missing here
+     *  into this repository, and sets the branch REMOTE/BRANCH to its
+     *  head.  The remote is locked shared, so that its own commands may
+     *  read it meanwhile but not change it.  Nothing is copied if that
+     *  branch's ref could not then be written. */
+    void fetch(String branch) {
+        long start = Trace.start();
+        RepositoryLock.acquire(_folder, true);
+        String head = WorkingTree.isBranchName(branch)
+            ? Journal.read(ref(branch)) : null;
+        if (head == null) {
+            throw new GitletException(
+                    "That remote does not have that branch.");
+        }
+        if (!Journal.isWritable(
+                Utils.join(Main.REFS_FOLDER, branchName(branch)))) {
+            throw new GitletException(
+                    "A branch with the remote's name is in the way.");
+        }
+        List<Commit> commits = copy(_commits, _blobs,
+                Commit.COMMIT_STORE, Blob.BLOB_STORE, head);
+        for (Commit commit : commits) {
+            commit.index();
+        }
+        WorkingTree tracking = new WorkingTree(branchName(branch));
+        tracking.setHead(head);
+        tracking.saveWorkingTree();
+        Trace.end("Remote.fetch", start, commits.size());
+    }
+
+    /** Copies the history of the current branch that the remote lacks
+     *  to it, and sets the remote's BRANCH, which is created if it does
+     *  not exist, to the current head.  The remote's branch must be an
+     *  ancestor of the current head.  The copied commits are appended to
+     *  the remote's commit graph and log, parents first, so the cost is
+     *  that of the new history alone.  The remote is locked exclusive
+     *  until the command finishes and its ref is replaced.  Nothing is
+     *  copied if that ref could not be written, or if BRANCH is the
+     *  remote's current branch, as moving it would leave the remote's
+     *  index and files behind its head. */
+    void push(String branch) {
+        long start = Trace.start();
+        if (!WorkingTree.isBranchName(branch)) {
+            throw new GitletException("Not a valid branch name.");
+        }
+        RepositoryLock.acquire(_folder, false);
+        String head = WorkingTree.headOf(WorkingTree.currentBranchName());
+        File ref = ref(branch);
+        if (!Journal.isWritable(ref)) {
+            throw new GitletException(
+                    "The remote cannot have a branch with that name.");
+        }
+        if (branch.equals(Journal.read(
+                new File(_folder, Main.HEAD_FILE.getName())))) {
+            throw new GitletException(
+                    "Cannot push to the remote's current branch.");
+        }
+        String remoteHead = Journal.read(ref);
+        if (remoteHead != null) {
+            if (!Commit.exists(remoteHead)
+                    || !Commit.splitPoint(remoteHead, head)
+                        .equals(remoteHead)) {
+                throw new GitletException(
+                        "Please pull down remote changes before pushing.");
+            }
+        }
+        List<Commit> commits = copy(Commit.COMMIT_STORE, Blob.BLOB_STORE,
+                _commits, _blobs, head);
+        Journal.flush();
+        for (Commit commit : commits) {
+            CommitGraph.appendTo(_folder, commit);
+            CommitLog.appendTo(_folder, commit);
+        }
+        Journal.update(ref, head);
+        Trace.end("Remote.push", start, commits.size());
+    }
+
+    /** Returns the ref file of the remote's BRANCH. */
+    private File ref(String branch) {
+        return Utils.join(_folder, Main.REFS_FOLDER.getName(), branch);
+    }
+
+    /** Copies the commit HEAD and those of its ancestors that are not in
+     *  DESTCOMMITS from COMMITS into DESTCOMMITS, and the Trees and blobs
+     *  of those commits that are not in DESTBLOBS from BLOBS into
+     *  DESTBLOBS.  The walk back from HEAD stops at every commit that
+     *  DESTCOMMITS holds, since it must hold that commit's history too.
+     *  The files are copied before the commits, so that a commit is
+     *  never present without them.
+     *  @return the commits copied, parents before children. */
+    private static List<Commit> copy(ObjectStore commits, ObjectStore blobs,
+                                     ObjectStore destCommits,
+                                     ObjectStore destBlobs, String head) {
+        List<Commit> result = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(head);
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (!seen.add(id) || destCommits.contains(id)) {
+                continue;
+            }
+            byte[] data = commits.get(id, Commit.TYPE);
+            if (Codec.isSerialized(data)) {
+                throw new GitletException(
+                        "Please migrate both repositories first.");
+            }
+            Commit commit = Commit.decode(id, data);
+            result.add(commit);
+            if (commit.getParentCode() != null) {
+                pending.push(commit.getParentCode());
+            }
+            if (commit.getSecondParentCode() != null) {
+                pending.push(commit.getSecondParentCode());
+            }
+        }
+        LinkedHashSet<String> objects = new LinkedHashSet<>();
+        for (Commit commit : result) {
+            Tree.missing(blobs, commit.getTreeCode(), destBlobs, objects);
+        }
+        destBlobs.copyFrom(blobs, new ArrayList<>(objects));
+        result.sort(Comparator.comparingInt(Commit::getGeneration));
+        List<String> ids = new ArrayList<>();
+        for (Commit commit : result) {
+            ids.add(commit.getCodeName());
+        }
+        destCommits.copyFrom(commits, ids);
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of add-remote, fetch, push and pull, between a repository in
+ *  Main.CWD and a remote whose .gitlet folder is in its remote folder.
+ *  @author Akshay Patel */
+public class RemoteTest {
+
+    /** Path of the remote's .gitlet folder, relative to Main.CWD. */
+    static final String REMOTE = "remote/.gitlet";
+
+    /** Makes the remote, with only the initial commit, and a new
+     *  repository that knows it as origin. */
+    @Before
+    public void setUp() throws IOException {
+        CommandTest.newRepository();
+        File remote = Utils.join(Main.CWD, REMOTE);
+        remote.getParentFile().mkdirs();
+        Files.move(Main.GITLET_FOLDER.toPath(), remote.toPath());
+        assertEquals("", CommandTest.run("init"));
+        assertEquals("", CommandTest.run("add-remote", "origin", REMOTE));
+    }
+
+    /** Replaces the repository in Main.CWD, and its files, with a new
+     *  one that knows the remote as origin, leaving the remote as it
+     *  is. */
+    static void newLocal() throws IOException {
+        for (File file : Main.CWD.listFiles()) {
+            if (!file.getName().equals("remote")) {
+                if (file.isDirectory()) {
+                    CommandTest.clear(file);
+                }
+                file.delete();
+            }
+        }
+        assertEquals("", CommandTest.run("init"));
+        assertEquals("", CommandTest.run("add-remote", "origin", REMOTE));
+    }
+
+    /** Returns the head of the remote's BRANCH, or null if it has no
+     *  such branch. */
+    static String remoteHead(String branch) {
+        File ref = Utils.join(Main.CWD, REMOTE, "refs", branch);
+        return ref.isFile() ? Utils.readContentsAsString(ref) : null;
+    }
+
+    /** Pushing creates a branch of the remote and then fast-forwards
+     *  it. */
+    @Test
+    public void pushFastForwards() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        assertEquals("", CommandTest.run("push", "origin", "other"));
+        assertEquals(CommandTest.head(), remoteHead("other"));
+        CommandTest.commit("f", "2\n", "two");
+        assertEquals("", CommandTest.run("push", "origin", "other"));
+        assertEquals(CommandTest.head(), remoteHead("other"));
+    }
+
+    /** A push that would lose the remote's commits is refused until they
+     *  are pulled and merged. */
+    @Test
+    public void pushRejected() throws IOException {
+        String initial = CommandTest.head();
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.run("push", "origin", "other");
+        String pushed = remoteHead("other");
+        CommandTest.run("reset", initial);
+        CommandTest.commit("f", "2\n", "two");
+        assertEquals("Please pull down remote changes before pushing.",
+                CommandTest.run("push", "origin", "other"));
+        assertEquals(pushed, remoteHead("other"));
+        assertEquals("Encountered a merge conflict.",
+                CommandTest.run("pull", "origin", "other"));
+        assertEquals("", CommandTest.run("push", "origin", "other"));
+        assertEquals(CommandTest.head(), remoteHead("other"));
+    }
+
+    /** The branch the remote has checked out is not pushed to, as its
+     *  index and files would be left behind. */
+    @Test
+    public void pushToCurrentBranch() throws IOException {
+        String initial = CommandTest.head();
+        CommandTest.commit("f", "1\n", "one");
+        assertEquals("Cannot push to the remote's current branch.",
+                CommandTest.run("push", "origin", "master"));
+        assertEquals(initial, remoteHead("master"));
+    }
+
+    /** Fetching copies a branch the repository lacks into
+     *  REMOTE/BRANCH, and pulling it then fast-forwards. */
+    @Test
+    public void fetchAndPull() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.commit("d/g", "2\n", "two");
+        CommandTest.run("push", "origin", "other");
+        String pushed = CommandTest.head();
+        newLocal();
+        assertEquals("That remote does not have that branch.",
+                CommandTest.run("fetch", "origin", "none"));
+        assertEquals("A remote with that name does not exist.",
+                CommandTest.run("fetch", "elsewhere", "other"));
+        assertEquals("", CommandTest.run("fetch", "origin", "other"));
+        assertEquals("*master\norigin/other",
+                CommandTest.status("Branches"));
+        assertEquals("", CommandTest.run("checkout", pushed, "--", "f"));
+        assertEquals("1\n", CommandTest.read("f"));
+        CommandTest.run("rm", "f");
+        Utils.join(Main.CWD, "f").delete();
+        assertEquals("Current branch fast-forwarded.",
+                CommandTest.run("pull", "origin", "other"));
+        assertEquals(pushed, CommandTest.head());
+        assertEquals("2\n", CommandTest.read("d/g"));
+    }
+
+    /** Branches and remotes may not share names, since a remote's
+     *  branches are kept in a folder of its name, and a refused name
+     *  leaves the repository usable. */
+    @Test
+    public void nameCollisions() throws IOException {
+        CommandTest.commit("f", "1\n", "one");
+        CommandTest.run("push", "origin", "other");
+        CommandTest.run("fetch", "origin", "other");
+        assertEquals("A remote with that name already exists.",
+                CommandTest.run("branch", "origin"));
+        assertEquals("*master\norigin/other",
+                CommandTest.status("Branches"));
+        CommandTest.run("rm-remote", "origin");
+        assertEquals("A remote with that name already exists.",
+                CommandTest.run("branch", "origin"));
+        assertEquals("A branch with that name already exists.",
+                CommandTest.run("add-remote", "master", REMOTE));
+        CommandTest.run("branch", "side");
+        assertEquals("A branch with that name already exists.",
+                CommandTest.run("add-remote", "side", REMOTE));
+        assertEquals("*master\norigin/other\nside",
+                CommandTest.status("Branches"));
+    }
+}
@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A lock on a whole repository, taken on the lock file in its .gitlet
+ *  folder with FileChannel.lock, so that it excludes other processes as
+ *  well as other commands.  Commands that only read the repository take
+ *  it shared, so any number of them run together; commands that change
+ *  it take it exclusive, and so wait for the readers to finish and keep
+ *  new ones out until they are done.  A command may lock several
+ *  repositories, as fetch locks the remote shared and push locks it
+ *  exclusive; every lock it takes is held until the command finishes,
+ *  and then released by releaseAll.  Locks are per repository, so
+ *  commands on different repositories never wait for each other, and
+ *  refs are still replaced by compare-and-swap through the Journal, so
+ *  that no ref is changed on a stale read even by a process that does
+ *  not take the lock.
+ *  @author Akshay Patel */
+class RepositoryLock {
+
+    /** Name of the lock file in a .gitlet folder. */
+    static final String LOCK_FILE = "lock";
+
+    /** Locks held by the current command, by .gitlet folder. */
+    private static final HashMap<Path, RepositoryLock> HELD = new HashMap<>();
+
+    /** The lock file, opened for reading and writing. */
+    private final FileChannel _channel;
+
+    /** The lock held on it. */
+    private final FileLock _lock;
+
+    /** A lock LOCK held through CHANNEL. */
+    private RepositoryLock(FileChannel channel, FileLock lock) {
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Locks the repository whose .gitlet folder is FOLDER, shared iff
+     *  SHARED, waiting for any conflicting lock to be released, and holds
+     *  the lock until releaseAll.  A repository already locked by the
+     *  current command stays locked as it is.  Throws a GitletException
+     *  if waiting could never end, as when two commands each wait for a
+     *  repository the other holds. */
+    static synchronized void acquire(File folder, boolean shared) {
+        Path key = folder.toPath().toAbsolutePath().normalize();
+        if (HELD.containsKey(key)) {
+            return;
+        }
+        long start = Trace.start();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(
+                    key.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            HELD.put(key, new RepositoryLock(channel,
+                    channel.lock(0, Long.MAX_VALUE, shared)));
+        } catch (IOException excp) {
+            close(channel);
+            throw new GitletException(
+                    "Another command is using the repository; try again.");
+        }
+        Trace.end("RepositoryLock.acquire", start, shared ? 0 : 1);
+    }
+
+    /** Returns true iff the current command holds the exclusive lock on
+     *  the repository whose .gitlet folder holds FILE. */
+    static synchronized boolean holdsExclusive(File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        for (Map.Entry<Path, RepositoryLock> held : HELD.entrySet()) {
+            if (path.startsWith(held.getKey())
+                    && !held.getValue()._lock.isShared()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Releases every lock the current command holds. */
+    static synchronized void releaseAll() {
+        for (RepositoryLock held : HELD.values()) {
+            held.release();
+        }
+        HELD.clear();
+    }
+
+    /** Releases this lock by closing its file. */
+    private void release() {
+        close(_channel);
+    }
+
+    /** Closes CHANNEL, if it is open, releasing any lock held through
+     *  it. */
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
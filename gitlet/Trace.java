@@ -0,0 +1,279 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Timings of the I/O, hashing and object loading that each command
+ *  does.  Tracing is turned on by running java gitlet.Main --trace ARGS,
+ *  or by setting the GITLET_TRACE environment variable or the
+ *  gitlet.trace property, to "summary" to have a table of where the
+ *  command spent its time printed on standard error when it finishes,
+ *  or to the name of a file to have a Chrome trace-event JSON file
+ *  written there (--trace=FILE does the same).  A daemon traces every
+ *  command it runs if it was started with tracing on.
+ *
+ *  Instrumented methods call start on entry and end on exit, naming
+ *  themselves and the bytes they read, wrote or hashed; the time of a
+ *  method includes that of the methods it calls.  Every cache that is
+ *  watched reports its hits and misses.  Whether tracing is on is fixed
+ *  when this class is first used, and when it is off start and end do
+ *  nothing, so that the JIT compiles them away.
+ *  @author Akshay Patel */
+class Trace {
+
+    /** Command-line flag that turns tracing on. */
+    static final String FLAG = "--trace";
+
+    /** System property that turns tracing on. */
+    static final String PROPERTY = "gitlet.trace";
+
+    /** Environment variable that turns tracing on. */
+    static final String VARIABLE = "GITLET_TRACE";
+
+    /** Destination of a per-command table. */
+    static final String SUMMARY = "summary";
+
+    /** Where traces go: SUMMARY, the name of a JSON file, or null if
+     *  tracing is off. */
+    private static final String DESTINATION = destination();
+
+    /** True iff tracing is on. */
+    static final boolean ENABLED = DESTINATION != null;
+
+    /** Events of the current command. */
+    private static final ConcurrentLinkedQueue<Event> EVENTS =
+        new ConcurrentLinkedQueue<>();
+
+    /** Caches watched, by name. */
+    private static final Map<String, ObjectCache<?>> CACHES =
+        new LinkedHashMap<>();
+
+    /** Hits and misses of each watched cache when the current command
+     *  began. */
+    private static final Map<String, long[]> CACHES_BEFORE =
+        new TreeMap<>();
+
+    /** The current command. */
+    private static String _command;
+
+    /** Time at which the current command began. */
+    private static long _begin;
+
+    /** Returns where traces go, from the gitlet.trace property or the
+     *  GITLET_TRACE variable, or null if neither is set. */
+    private static String destination() {
+        String value = System.getProperty(PROPERTY, System.getenv(VARIABLE));
+        if (value == null || value.isEmpty() || value.equals("0")) {
+            return null;
+        }
+        return value.equals("1") ? SUMMARY : value;
+    }
+
+    /** Returns the time at which a traced method starts, or 0 if
+     *  tracing is off. */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Records that the method NAME, which started at START, has ended
+     *  having moved BYTES bytes. */
+    static void end(String name, long start, long bytes) {
+        if (ENABLED) {
+            EVENTS.add(new Event(name, start, System.nanoTime() - start,
+                    bytes));
+        }
+    }
+
+    /** Records that the method NAME, which started at START, has
+     *  ended. */
+    static void end(String name, long start) {
+        end(name, start, 0);
+    }
+
+    /** Has the hits and misses of CACHE reported as NAME.
+     *  @return CACHE */
+    static <C extends ObjectCache<?>> C watch(String name, C cache) {
+        if (ENABLED) {
+            synchronized (CACHES) {
+                CACHES.put(name, cache);
+            }
+        }
+        return cache;
+    }
+
+    /** Starts tracing the command ARGS. */
+    static void begin(String[] args) {
+        if (!ENABLED) {
+            return;
+        }
+        EVENTS.clear();
+        _command = "gitlet " + String.join(" ", args);
+        synchronized (CACHES) {
+            CACHES_BEFORE.clear();
+            for (Map.Entry<String, ObjectCache<?>> cache
+                     : CACHES.entrySet()) {
+                CACHES_BEFORE.put(cache.getKey(), new long[] {
+                    cache.getValue().hits(), cache.getValue().misses() });
+            }
+        }
+        _begin = System.nanoTime();
+    }
+
+    /** Finishes tracing the current command, reporting on it. */
+    static void finish() {
+        if (!ENABLED || _command == null) {
+            return;
+        }
+        long duration = System.nanoTime() - _begin;
+        Map<String, long[]> caches = new TreeMap<>();
+        synchronized (CACHES) {
+            for (Map.Entry<String, ObjectCache<?>> cache
+                     : CACHES.entrySet()) {
+                long[] before = CACHES_BEFORE.getOrDefault(cache.getKey(),
+                        new long[2]);
+                caches.put(cache.getKey(), new long[] {
+                    cache.getValue().hits() - before[0],
+                    cache.getValue().misses() - before[1] });
+            }
+        }
+        if (DESTINATION.equals(SUMMARY)) {
+            summarize(System.err, duration, caches);
+        } else {
+            try (Writer out = Files.newBufferedWriter(
+                    Paths.get(DESTINATION), StandardCharsets.UTF_8)) {
+                writeJson(out, duration, caches);
+            } catch (IOException excp) {
+                System.err.println("Cannot write trace: "
+                        + excp.getMessage());
+            }
+        }
+        EVENTS.clear();
+        _command = null;
+    }
+
+    /** Prints a table of the current command's events, which took
+     *  DURATION nanoseconds, and of the hits and misses in CACHES, on
+     *  OUT. */
+    private static void summarize(PrintStream out, long duration,
+                                  Map<String, long[]> caches) {
+        Map<String, long[]> totals = new TreeMap<>();
+        for (Event event : EVENTS) {
+            long[] total = totals.computeIfAbsent(event._name,
+                k -> new long[3]);
+            total[0] += 1;
+            total[1] += event._duration;
+            total[2] += event._bytes;
+        }
+        List<Map.Entry<String, long[]>> rows =
+            new ArrayList<>(totals.entrySet());
+        rows.sort(Comparator.comparingLong(
+                (Map.Entry<String, long[]> row) -> -row.getValue()[1]));
+        out.printf("%s: %.3f ms%n", _command, duration / 1e6);
+        out.printf("  %-28s %8s %12s %14s%n", "method", "calls", "ms",
+                "bytes");
+        for (Map.Entry<String, long[]> row : rows) {
+            long[] total = row.getValue();
+            out.printf("  %-28s %8d %12.3f %14d%n", row.getKey(), total[0],
+                    total[1] / 1e6, total[2]);
+        }
+        out.printf("  %-28s %8s %12s%n", "cache", "hits", "misses");
+        for (Map.Entry<String, long[]> cache : caches.entrySet()) {
+            out.printf("  %-28s %8d %12d%n", cache.getKey(),
+                    cache.getValue()[0], cache.getValue()[1]);
+        }
+        out.flush();
+    }
+
+    /** Writes the current command, which took DURATION nanoseconds, and
+     *  its events as Chrome trace events to OUT, followed by the hits
+     *  and misses in CACHES as counters. */
+    private static void writeJson(Writer out, long duration,
+                                  Map<String, long[]> caches)
+        throws IOException {
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        writeEvent(out, new Event(_command, _begin, duration, 0));
+        for (Event event : EVENTS) {
+            out.write(",\n");
+            writeEvent(out, event);
+        }
+        long end = micros(_begin + duration);
+        for (Map.Entry<String, long[]> cache : caches.entrySet()) {
+            out.write(String.format(",\n{\"name\":%s,\"ph\":\"C\","
+                    + "\"pid\":1,\"ts\":%d,\"args\":{\"hits\":%d,"
+                    + "\"misses\":%d}}", quote("cache " + cache.getKey()),
+                    end, cache.getValue()[0], cache.getValue()[1]));
+        }
+        out.write("\n]}\n");
+    }
+
+    /** Writes EVENT to OUT as a complete trace event. */
+    private static void writeEvent(Writer out, Event event)
+        throws IOException {
+        out.write(String.format("{\"name\":%s,\"cat\":\"gitlet\","
+                + "\"ph\":\"X\",\"pid\":1,\"tid\":%d,\"ts\":%d,\"dur\":%d,"
+                + "\"args\":{\"bytes\":%d}}", quote(event._name),
+                event._thread,
+                micros(event._start), event._duration / 1000,
+                event._bytes));
+    }
+
+    /** Returns time T in microseconds since the current command
+     *  began. */
+    private static long micros(long t) {
+        return (t - _begin) / 1000;
+    }
+
+    /** Returns TEXT as a JSON string. */
+    private static String quote(String text) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** One call of a traced method. */
+    private static class Event {
+
+        /** Name of the method. */
+        private final String _name;
+
+        /** Time at which it started. */
+        private final long _start;
+
+        /** Nanoseconds it took. */
+        private final long _duration;
+
+        /** Bytes it moved. */
+        private final long _bytes;
+
+        /** Thread it ran on. */
+        private final long _thread = Thread.currentThread().getId();
+
+        /** A call of NAME that started at START, took DURATION
+         *  nanoseconds and moved BYTES bytes. */
+        Event(String name, long start, long duration, long bytes) {
+            _name = name;
+            _start = start;
+            _duration = duration;
+            _bytes = bytes;
+        }
+    }
+}
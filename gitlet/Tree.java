@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit, in canonical binary form: for each entry,
+ *  in order of name, its mode, a space, its name, a NUL byte and the 20
+ *  bytes of the SHA-1 of its blob, or of its own Tree if it is a
+ *  subdirectory.  A Tree is named by the SHA-1 of that form under a
+ *  "tree LENGTH\0" header, and is stored alongside the blobs.  Because
+ *  a directory's name depends only on its contents, commits share every
+ *  subdirectory they did not change, and a commit that changes a few
+ *  files writes only the Trees on the paths to them.  Trees are hashed
+ *  by streaming each entry into a MessageDigest.
+ *  @author Akshay Patel */
+class Tree {
+
+    /** Type of Tree objects in the Blob store. */
+    static final String TYPE = "tree";
+
+    /** Mode recorded for every file: a regular, non-executable file. */
+    static final String MODE = "100644";
+
+    /** Mode recorded for a subdirectory. */
+    static final String DIRECTORY_MODE = "40000";
+
+    /** Separator of the names in a path. */
+    static final char SEPARATOR = '/';
+
+    /** Map from the name of each entry to the SHA-1 of its blob or
+     *  Tree. */
+    private final TreeMap<String, ObjectId> _entries = new TreeMap<>();
+
+    /** Names of the entries that are subdirectories. */
+    private final HashSet<String> _directories = new HashSet<>();
+
+    /** SHA-1 of Tree, or null if it has changed since it was computed. */
+    private String _codeName;
+
+    /** An empty Tree. */
+    private Tree() {
+    }
+
+    /** Returns the SHA-1 of Tree. */
+    String getCodeName() {
+        if (_codeName == null) {
+            MessageDigest md = Utils.sha1Digest();
+            md.update(ObjectStore.header(TYPE, length()));
+            try (OutputStream out = new DigestOutputStream(
+                    OutputStream.nullOutputStream(), md)) {
+                encode(out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _codeName = Utils.toHex(md.digest());
+        }
+        return _codeName;
+    }
+
+    /** Saves Tree in the Blob store, unless it is already there.
+     * @return the SHA-1 of Tree. */
+    private String save() {
+        String code = getCodeName();
+        if (!Blob.BLOB_STORE.contains(code)) {
+            long start = Trace.start();
+            ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream((int) length());
+            try {
+                encode(bytes);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Blob.BLOB_STORE.put(code, TYPE, bytes.toByteArray());
+            Trace.end("Tree.save", start, bytes.size());
+        }
+        return code;
+    }
+
+    /** Returns the Tree named CODENAME in the Blob store, or an empty
+     *  Tree if CODENAME is null. */
+    static Tree fromFile(String codeName) {
+        return fromFile(Blob.BLOB_STORE, codeName);
+    }
+
+    /** Returns the Tree named CODENAME in STORE, or an empty Tree if
+     *  CODENAME is null. */
+    private static Tree fromFile(ObjectStore store, String codeName) {
+        Tree tree = new Tree();
+        if (codeName == null) {
+            return tree;
+        }
+        long start = Trace.start();
+        byte[] data = store.get(codeName, TYPE);
+        int i = 0;
+        while (i < data.length) {
+            int name = indexOf(data, (byte) ' ', i) + 1;
+            int end = indexOf(data, (byte) 0, name);
+            String entry =
+                new String(data, name, end - name, StandardCharsets.UTF_8);
+            tree._entries.put(entry, ObjectId.fromBytes(data, end + 1));
+            if (data[i] == DIRECTORY_MODE.charAt(0)) {
+                tree._directories.add(entry);
+            }
+            i = end + 1 + Pack.ID_BYTES;
+        }
+        tree._codeName = codeName;
+        Trace.end("Tree.fromFile", start, data.length);
+        return tree;
+    }
+
+    /** Returns every file under the Tree named CODENAME, by path, with
+     *  the SHA-1s of their blobs. */
+    static TreeMap<String, ObjectId> files(String codeName) {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        addFiles(codeName, "", result);
+        return result;
+    }
+
+    /** Adds the files under the Tree named CODENAME to RESULT, with
+     *  their paths prefixed by PREFIX. */
+    private static void addFiles(String codeName, String prefix,
+                                 TreeMap<String, ObjectId> result) {
+        Tree tree = fromFile(codeName);
+        for (Map.Entry<String, ObjectId> entry
+                 : tree._entries.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (tree._directories.contains(entry.getKey())) {
+                addFiles(entry.getValue().toHex(), path + SEPARATOR, result);
+            } else {
+                result.put(path, entry.getValue());
+            }
+        }
+    }
+
+    /** Adds to RESULT the SHA-1s of the Tree named CODENAME in SOURCE
+     *  and of every Tree and blob under it that DEST lacks, each Tree
+     *  after the objects below it.  Trees that DEST already holds, or
+     *  that are already in RESULT, are skipped without being read, so
+     *  the cost is proportional to the objects that are missing. */
+    static void missing(ObjectStore source, String codeName,
+                        ObjectStore dest, Set<String> result) {
+        if (result.contains(codeName) || dest.contains(codeName)) {
+            return;
+        }
+        Tree tree = fromFile(source, codeName);
+        for (Map.Entry<String, ObjectId> entry
+                 : tree._entries.entrySet()) {
+            String code = entry.getValue().toHex();
+            if (tree._directories.contains(entry.getKey())) {
+                missing(source, code, dest, result);
+            } else if (!dest.contains(code)) {
+                result.add(code);
+            }
+        }
+        result.add(codeName);
+    }
+
+    /** Returns the files whose blobs differ between the Trees named
+     *  BEFORE and AFTER, mapped to their old and new blobs, null where a
+     *  file is absent.  Subdirectories whose Trees have the same SHA-1
+     *  on both sides are skipped without being read. */
+    static TreeMap<String, ObjectId[]> changes(String before,
+                                                String after) {
+        TreeMap<String, ObjectId[]> result = new TreeMap<>();
+        addChanges(before, after, "", result);
+        return result;
+    }
+
+    /** Adds the files that differ between the Trees named BEFORE and
+     *  AFTER, either of which may be null, to RESULT, with their paths
+     *  prefixed by PREFIX. */
+    private static void addChanges(String before, String after,
+                                   String prefix,
+                                   TreeMap<String, ObjectId[]> result) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        Tree old = fromFile(before), now = fromFile(after);
+        TreeSet<String> names = new TreeSet<>(old._entries.keySet());
+        names.addAll(now._entries.keySet());
+        for (String name : names) {
+            ObjectId oldCode = old._entries.get(name);
+            ObjectId newCode = now._entries.get(name);
+            boolean oldDirectory = old._directories.contains(name);
+            boolean newDirectory = now._directories.contains(name);
+            if (Objects.equals(oldCode, newCode)
+                    && oldDirectory == newDirectory) {
+                continue;
+            }
+            String path = prefix + name;
+            if (oldDirectory || newDirectory) {
+                addChanges(oldDirectory ? oldCode.toHex() : null,
+                        newDirectory ? newCode.toHex() : null,
+                        path + SEPARATOR, result);
+            }
+            if (oldCode != null && !oldDirectory
+                    || newCode != null && !newDirectory) {
+                result.put(path, new ObjectId[] {
+                    oldDirectory ? null : oldCode,
+                    newDirectory ? null : newCode });
+            }
+        }
+    }
+
+    /** Applies CHANGES to the Tree named BASE, saving every Tree that
+     *  changes.  CHANGES maps paths to the SHA-1s of their new blobs, or
+     *  to null for files that are removed.  Only the Trees on the paths
+     *  to changed files are read or written.
+     * @return the SHA-1 of the resulting Tree, which is saved even if
+     * it is empty. */
+    static String update(String base,
+                         SortedMap<String, ObjectId> changes) {
+        Tree tree = apply(base, changes);
+        return tree == null ? new Tree().save() : tree.getCodeName();
+    }
+
+    /** Applies CHANGES to the Tree named BASE, or to an empty Tree if
+     *  BASE is null, saving the result.  A file in CHANGES that replaces
+     *  a subdirectory of the same name replaces all of it, so changes
+     *  below that name are skipped.
+     * @return the resulting Tree, or null if it is empty. */
+    private static Tree apply(String base,
+                              SortedMap<String, ObjectId> changes) {
+        Tree tree = fromFile(base);
+        TreeMap<String, TreeMap<String, ObjectId>> below = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash == -1) {
+                tree.put(path, change.getValue(), false);
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, ObjectId>> directory
+                 : below.entrySet()) {
+            String name = directory.getKey();
+            if (tree._entries.containsKey(name)
+                    && !tree._directories.contains(name)) {
+                continue;
+            }
+            String old = tree._directories.contains(name)
+                ? tree._entries.get(name).toHex() : null;
+            Tree result = apply(old, directory.getValue());
+            tree.put(name, result == null ? null
+                     : ObjectId.fromHex(result.getCodeName()), true);
+        }
+        if (tree._entries.isEmpty()) {
+            return null;
+        }
+        tree.save();
+        return tree;
+    }
+
+    /** Sets entry NAME to CODE, a subdirectory iff DIRECTORY, or removes
+     *  it if CODE is null. */
+    private void put(String name, ObjectId code, boolean directory) {
+        if (code == null) {
+            _entries.remove(name);
+            _directories.remove(name);
+        } else {
+            _entries.put(name, code);
+            if (directory) {
+                _directories.add(name);
+            } else {
+                _directories.remove(name);
+            }
+        }
+        _codeName = null;
+    }
+
+    /** Returns the mode of entry NAME. */
+    private String modeOf(String name) {
+        return _directories.contains(name) ? DIRECTORY_MODE : MODE;
+    }
+
+    /** Returns the length of the canonical form of Tree. */
+    private long length() {
+        long length = 0;
+        for (String name : _entries.keySet()) {
+            length += modeOf(name).length() + 1
+                + name.getBytes(StandardCharsets.UTF_8).length
+                + 1 + Pack.ID_BYTES;
+        }
+        return length;
+    }
+
+    /** Writes the canonical form of Tree to OUT. */
+    private void encode(OutputStream out) throws IOException {
+        for (Map.Entry<String, ObjectId> entry : _entries.entrySet()) {
+            String name = entry.getKey();
+            out.write((modeOf(name) + " ").getBytes(StandardCharsets.UTF_8));
+            out.write(name.getBytes(StandardCharsets.UTF_8));
+            out.write(0);
+            out.write(entry.getValue().toBytes());
+        }
+    }
+
+    /** Returns the index of the first B in DATA at or after START.
+     *  Throws a GitletException if there is none. */
+    private static int indexOf(byte[] data, byte b, int start) {
+        for (int i = start; i < data.length; i += 1) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        throw Utils.error("Corrupt tree.");
+    }
+}
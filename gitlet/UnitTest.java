@@ -1,8 +1,10 @@
 package gitlet;
 
+import java.io.IOException;
+import java.nio.file.Files;
+
 import ucb.junit.textui;
 import org.junit.Test;
-import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -10,9 +12,18 @@ import static org.junit.Assert.*;
 public class UnitTest {
 
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
-     *  the arguments of runClasses to run other JUnit tests. */
-    public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+     *  the arguments of runClasses to run other JUnit tests.  Tests that
+     *  need a repository make one in the directory named by gitlet.cwd,
+     *  which is set to a new temporary directory unless it is given. */
+    public static void main(String[] ignored) throws IOException {
+        if (System.getProperty(CommandTest.CWD_PROPERTY) == null) {
+            System.setProperty(CommandTest.CWD_PROPERTY,
+                    Files.createTempDirectory("gitlet").toString());
+        }
+        System.exit(textui.runClasses(UnitTest.class, CommandTest.class,
+                PackTest.class, CodecTest.class, DiffTest.class,
+                MergeTest.class, JournalTest.class, ObjectStoreTest.class,
+                RemoteTest.class, DaemonTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -1,12 +1,25 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.TreeMap;
-
-/** WorkingTree class that keeps track of branches and commits.
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** WorkingTree class that keeps track of branches.  A branch is only a
+ *  name and the SHA-1 of its head commit, kept in a small ref file in
+ *  the refs folder, and the HEAD file names the current branch.  The
+ *  history of a branch is that of its head, found through the commit
+ *  graph, so saving a branch costs the same however old it is.  The
+ *  branches fetched from a remote are named REMOTE/BRANCH, and their
+ *  refs are kept in a folder named for the remote.  Refs and HEAD are
+ *  changed through the Journal, and so only once the command changing
+ *  them finishes; until then, this class reads them through it too.
  *  @author Akshay Patel*/
-public class WorkingTree implements Serializable {
+public class WorkingTree {
 
     /** Name of WorkingTree. */
     private String _name;
@@ -14,87 +27,150 @@ public class WorkingTree implements Serializable {
     /** Head of commit tree, in terms of commit string. */
     private String _head;
 
-    /** TreeMap of Commits and their respective log messages. */
-    private TreeMap<String, String> _commitsAndMessages;
-
-    /** TreeMap of Commits in their 6-digit SHA-1
-     * codes and their respective full SHA-1 codes. */
-    private TreeMap<String, String> _commitSixDigitAndFull;
-
-    /** ArrayList of Commits. */
-    private ArrayList<String> _commits;
-
-    /** Is this the current branch. */
-    private boolean _isCurrent;
-
     /** Initializes WorkingTree class.
      * @param name */
     public WorkingTree(String name) {
         _name = name;
-        _isCurrent = false;
-        _commitsAndMessages = new TreeMap<String, String>();
-        _commitSixDigitAndFull = new TreeMap<String, String>();
-        _commits = new ArrayList<String>();
     }
 
-    /** Saves WorkingTree object into file. */
+    /** Saves the head of WorkingTree in its ref. */
     public void saveWorkingTree() {
-        Utils.writeObject(Utils.join(Main.WORKING_TREES, _name), this);
+        Journal.update(Utils.join(Main.REFS_FOLDER, _name), _head);
+    }
+
+    /** Gets name of branch.
+     * @return name */
+    public String getName() {
+        return _name;
     }
 
     /** Returns whether branch is current.
      * @return boolean */
     public boolean isCurrent() {
-        return _isCurrent;
+        return _name.equals(currentBranchName());
     }
 
-    /** Change whether branch is current.
-     * @param bool */
-    public void changeIsCurrent(boolean bool) {
-        _isCurrent = bool;
+    /** Makes this the current branch. */
+    public void makeCurrent() {
+        Journal.update(Main.HEAD_FILE, _name);
     }
 
-    /** Gets WorkingTree object from file.
+    /** Returns whether NAME may name a branch of its own: it must be
+     * neither empty, "." nor "..", hold no separator, and not end as the
+     * lock file of a ref does, so that its ref stays a plain file in the
+     * refs folder.
      * @param name
-     * Name of WorkingTree file
-     * @return WorkingTree */
-    public static WorkingTree fromFile(String name) {
-        return Utils.readObject(Utils.join(Main.WORKING_TREES, name),
-                WorkingTree.class);
+     * Name of branch
+     * @return boolean */
+    public static boolean isBranchName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+            && name.indexOf(Tree.SEPARATOR) == -1
+            && name.indexOf('\\') == -1
+            && !name.endsWith(Journal.LOCK_SUFFIX);
     }
 
-    /** Get current branch.
-     * @return WorkingTree */
-    public static WorkingTree getCurrentBranch() {
-        WorkingTree foundTree = new WorkingTree("placeholder");
-        for (String file: Utils.plainFilenamesIn(Main.WORKING_TREES)) {
-            if (WorkingTree.fromFile(file).isCurrent()) {
-                foundTree = WorkingTree.fromFile(file);
-                break;
+    /** Returns whether NAME may name an existing branch: a branch name,
+     * or REMOTE/BRANCH for a branch fetched from a remote.
+     * @param name
+     * Name of branch
+     * @return boolean */
+    public static boolean isRefName(String name) {
+        int slash = name.indexOf(Tree.SEPARATOR);
+        if (slash == -1) {
+            return isBranchName(name);
+        }
+        return isBranchName(name.substring(0, slash))
+            && isBranchName(name.substring(slash + 1));
+    }
+
+    /** Returns whether a branch named NAME exists.
+     * @param name
+     * Name of branch
+     * @return boolean */
+    public static boolean exists(String name) {
+        return isRefName(name)
+            && Journal.read(Utils.join(Main.REFS_FOLDER, name)) != null;
+    }
+
+    /** Gets the names of all branches, including those fetched from
+     * remotes, but not the lock files of refs being replaced.
+     * @return names in lexicographic order */
+    public static List<String> branchNames() {
+        TreeSet<String> result =
+            new TreeSet<>(Utils.plainFilenamesIn(Main.REFS_FOLDER));
+        File[] remotes = Main.REFS_FOLDER.listFiles(File::isDirectory);
+        if (remotes != null) {
+            for (File remote : remotes) {
+                for (String name : Utils.plainFilenamesIn(remote)) {
+                    result.add(remote.getName() + "/" + name);
+                }
             }
         }
-        return foundTree;
+        result.removeIf(name -> name.endsWith(Journal.LOCK_SUFFIX));
+        Path refs = Main.REFS_FOLDER.toPath();
+        for (Map.Entry<File, String> update
+                 : Journal.updates().entrySet()) {
+            Path ref = update.getKey().toPath();
+            if (ref.startsWith(refs)) {
+                String name = refs.relativize(ref).toString()
+                    .replace(File.separatorChar, Tree.SEPARATOR);
+                if (update.getValue() == null) {
+                    result.remove(name);
+                } else {
+                    result.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Gets the name of the current branch.
+     * @return name */
+    public static String currentBranchName() {
+        return Journal.read(Main.HEAD_FILE);
+    }
+
+    /** Gets the SHA-1 of the head of a branch from its ref.
+     * @param name
+     * Name of branch
+     * @return SHA-1 */
+    public static String headOf(String name) {
+        return Journal.read(Utils.join(Main.REFS_FOLDER, name));
+    }
+
+    /** Gets the head commit of the current branch from its ref.
+     * @return Commit */
+    public static Commit currentHeadCommit() {
+        return Commit.fromFile(headOf(currentBranchName()));
     }
 
-    /** Gets commit map of branch.
-     * @return TreeMap */
-    public TreeMap<String, String> getCommitMap() {
-        return _commitsAndMessages;
+    /** Deletes a branch, along with any record of it left in the
+     * workingTrees folder by older versions.
+     * @param name
+     * Name of branch */
+    public static void delete(String name) throws IOException {
+        if (!isRefName(name)) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
+        }
+        Files.deleteIfExists(Utils.join(Main.WORKING_TREES, name).toPath());
+        Journal.update(Utils.join(Main.REFS_FOLDER, name), null);
     }
 
-    /** Gets 6-digit commit map of branch.
-     * @return TreeMap */
-    public TreeMap<String, String> getSixDigitCommitMap() {
-        return _commitSixDigitAndFull;
+    /** Gets WorkingTree object from its ref.
+     * @param name
+     * Name of branch
+     * @return WorkingTree */
+    public static WorkingTree fromFile(String name) {
+        WorkingTree branch = new WorkingTree(name);
+        branch._head = headOf(name);
+        return branch;
     }
 
-    /** Add commit to branch.
-     * @param commit */
-    public void addCommit(Commit commit) {
-        _commits.add(commit.getCodeName());
-        _commitsAndMessages.put(commit.getCodeName(), commit.getLog());
-        _commitSixDigitAndFull.put(commit.getSixSHA1(), commit.getCodeName());
-        _head = commit.getCodeName();
+    /** Get current branch.
+     * @return WorkingTree */
+    public static WorkingTree getCurrentBranch() {
+        return fromFile(currentBranchName());
     }
 
     /** Sets head of branch.